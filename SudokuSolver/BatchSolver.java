@@ -0,0 +1,557 @@
+package SudokuSolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class solves all the puzzles of an input on several threads, and
+ *   writes one line per puzzle, in the order of the input:
+ *   - the symbols of the solution if the puzzle has exactly one
+ *   - the symbols of a solution followed by " multiple" if it has several
+ *   - "unsolvable" if it has none
+ *   - "invalid" if it could not be read (see PuzzleReader), in which case
+ *     the batch goes on with the next puzzle
+ * The puzzles can have any size read by PuzzleReader.
+ * At most maxPending puzzles are read ahead of the one being written, so
+ *   the memory used does not depend on the size of the input, and a slow
+ *   output slows down the reading. The solutions are written by a thread
+ *   of their own as soon as they and the ones before them are ready, and
+ *   flushed whenever the next one is not, so the solver can sit in a pipe:
+ *   the reading only waits for the solvers when maxPending puzzles are
+ *   waiting to be written, and never for the output of a slow producer to
+ *   be complete. If the input
+ *   fails, the solutions of the puzzles already read are written before
+ *   the error is thrown. If the output fails, an OutputException is thrown
+ *   instead, so that the caller can tell that nobody reads the solutions.
+ * Files of fixed-width records can also be solved with solveMapped, where
+ *   each thread reads its own chunks of the memory-mapped file (9x9 only).
+ * When collectStats is set, the SolverStats of all the puzzles are added up
+ *   and printed with the report. When a cache is set, the puzzles already
+ *   seen, or symmetric to one already seen, are taken from it.
+ * @author morel
+ */
+public class BatchSolver {
+
+    //Number of bytes per line written by solveMapped
+    public static final int MAPPED_OUTPUT_LENGTH = 83;
+
+    private final int threads;
+
+    //Maximum number of puzzles read but not written yet
+    private final int maxPending;
+
+    //One solver per thread, since a solver keeps its arrays between solves
+    private final ThreadLocal<Solver> solvers = ThreadLocal.withInitial(Solver::new);
+
+    //Whether the solvers collect their stats, to add them up in stats
+    public boolean collectStats = false;
+
+    //The results of the puzzles already solved, or null to solve them all
+    public SolutionCache cache;
+
+    //Time spent solving each puzzle
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    //Work done on all the puzzles, if collectStats is set
+    private final SolverStats stats = new SolverStats();
+
+    private long puzzles;
+    private long unsolvable;
+    private long multiple;
+    private long invalid;
+    private long elapsedNanos;
+
+    /**
+     * Thrown when the solutions cannot be written, for example because the
+     *   reader at the other end of a pipe is gone
+     */
+    public static class OutputException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OutputException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    public BatchSolver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchSolver(int threads) {
+        this.threads = threads;
+        this.maxPending = threads * 64;
+    }
+
+    /**
+     * Solves all the puzzles of the input
+     * @param input: the puzzles, in any format read by PuzzleReader
+     * @param output: where the solutions are written
+     * @throws OutputException: if the output cannot be written
+     * @throws IOException: if the input cannot be read, once the solutions
+     *    of the puzzles read before are written
+     */
+    public void solve(BufferedReader input, Writer output) throws IOException {
+        PuzzleReader reader = new PuzzleReader(input);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        OutputThread writer = new OutputThread(output);
+        long start = System.nanoTime();
+        writer.start();
+        try {
+            while (true) {
+                Future<Solution> solution;
+                try {
+                    String puzzle = reader.next();
+                    if (puzzle == null) {
+                        break;
+                    }
+                    solution = executor.submit(() -> solve(puzzle));
+                } catch (IllegalArgumentException e) {
+                    //The puzzle gets its line, in order, and the reader goes
+                    //  on with the next one
+                    solution = CompletableFuture.completedFuture(Solution.INVALID);
+                }
+                writer.add(solution);
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            //The solutions of the puzzles already read are not lost with the
+            //  input
+            if (!(e instanceof OutputException)) {
+                try {
+                    writer.finish();
+                } catch (IOException | RuntimeException other) {
+                    if (other != e) {
+                        e.addSuppressed(other);
+                    }
+                }
+            }
+            throw e;
+        } finally {
+            writer.interrupt();
+            executor.shutdownNow();
+            elapsedNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Solves all the puzzles of a file of fixed-width records (see
+     *   MappedPuzzleReader). Each thread takes the next chunk of the file that
+     *   nobody has taken yet, and writes the solutions of its records at
+     *   their place in the output, so no thread waits for another. Each
+     *   output line has MAPPED_OUTPUT_LENGTH bytes: the 81 digits of the
+     *   solution (all 0 if there is none), then 'S' if the solution is unique,
+     *   'M' if there are several, 'U' if there are none, 'I' if the record
+     *   could not be read, then '\n'. An invalid record does not stop the
+     *   others
+     * @param input: the file of puzzles
+     * @param output: the file of solutions, replaced if it exists
+     * @throws IOException: if the files cannot be read or written
+     */
+    public void solveMapped(Path input, Path output) throws IOException {
+        long start = System.nanoTime();
+        try (MappedPuzzleReader reader = new MappedPuzzleReader(input);
+                FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            //Several chunks per thread, so that a thread that is done early
+            //  can take some of the work left
+            ArrayList<MappedPuzzleReader.Chunk> chunks = reader.split(threads * 8);
+            AtomicInteger nextChunk = new AtomicInteger();
+            ArrayList<Thread> workers = new ArrayList<>(threads);
+            ArrayList<IOException> errors = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(() -> {
+                    try {
+                        solveChunks(chunks, nextChunk, channel);
+                    } catch (IOException | RuntimeException e) {
+                        synchronized (errors) {
+                            errors.add(e instanceof IOException ? (IOException) e
+                                    : new IOException(e));
+                        }
+                    }
+                }, "batch-" + i);
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while solving", e);
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw errors.get(0);
+            }
+        }
+        elapsedNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Solves chunks until there are none left
+     * @param chunks: all the chunks of the file
+     * @param nextChunk: the number of the next chunk nobody has taken
+     * @param output: the file of solutions
+     */
+    private void solveChunks(ArrayList<MappedPuzzleReader.Chunk> chunks,
+            AtomicInteger nextChunk, FileChannel output) throws IOException {
+        Grid grid = new Grid();
+        Solver solver = getSolver();
+        LatencyHistogram threadLatencies = new LatencyHistogram();
+        SolverStats threadStats = new SolverStats();
+        long threadUnsolvable = 0;
+        long threadMultiple = 0;
+        long threadInvalid = 0;
+
+        //Solutions are written by blocks of consecutive records
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * MAPPED_OUTPUT_LENGTH);
+        int chunk;
+        while ((chunk = nextChunk.getAndIncrement()) < chunks.size()) {
+            MappedPuzzleReader.Chunk records = chunks.get(chunk);
+            long blockStart = records.getFirstRecord();
+            while (true) {
+                int[] solution = null;
+                char status = 'S';
+                try {
+                    if (!records.next(grid)) {
+                        break;
+                    }
+                } catch (IllegalArgumentException e) {
+                    //The record keeps its line, and the chunk goes on
+                    status = 'I';
+                    threadInvalid++;
+                }
+                if (status != 'I') {
+                    long start = System.nanoTime();
+                    SolveResult result = solve(grid, solver);
+                    threadLatencies.record(System.nanoTime() - start);
+                    if (result.getStats() != null) {
+                        threadStats.add(result.getStats());
+                    }
+                    if (result.getStatus() == SolveResult.Status.MULTIPLE) {
+                        status = 'M';
+                        threadMultiple++;
+                    } else if (result.getStatus() == SolveResult.Status.UNSOLVABLE) {
+                        status = 'U';
+                        threadUnsolvable++;
+                    }
+                    solution = result.getSolution();
+                }
+                for (int i = 0; i < 81; i++) {
+                    buffer.put((byte) ('0' + (solution == null ? 0 : solution[i])));
+                }
+                buffer.put((byte) status);
+                buffer.put((byte) '\n');
+
+                if (!buffer.hasRemaining()) {
+                    writeBlock(buffer, output, blockStart);
+                    blockStart = records.getRecordNumber() + 1;
+                }
+            }
+            writeBlock(buffer, output, blockStart);
+        }
+
+        synchronized (this) {
+            latencies.add(threadLatencies);
+            stats.add(threadStats);
+            puzzles += threadLatencies.getCount();
+            unsolvable += threadUnsolvable;
+            multiple += threadMultiple;
+            invalid += threadInvalid;
+        }
+    }
+
+    /**
+     * Writes the solutions of a block of consecutive records at their place
+     * @param buffer: the solutions, emptied once written
+     * @param output: the file of solutions
+     * @param firstRecord: the number of the first record of the block
+     */
+    private void writeBlock(ByteBuffer buffer, FileChannel output, long firstRecord)
+            throws IOException {
+        buffer.flip();
+        long position = firstRecord * MAPPED_OUTPUT_LENGTH;
+        while (buffer.hasRemaining()) {
+            position += output.write(buffer, position);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Solves one puzzle on the current thread
+     * @param puzzle: the symbols of the puzzle
+     * @return Solution: the result and the time it took
+     */
+    private Solution solve(String puzzle) {
+        long start = System.nanoTime();
+        SolveResult result = solve(PuzzleReader.toGrid(puzzle), getSolver());
+        return new Solution(result, System.nanoTime() - start);
+    }
+
+    /**
+     * Solves a grid, through the cache if there is one
+     * @param grid: the grid to solve
+     * @param solver: the solver of the current thread
+     * @return SolveResult
+     */
+    private SolveResult solve(Grid grid, Solver solver) {
+        return cache == null ? solver.solve(grid) : cache.solve(grid, solver);
+    }
+
+    /**
+     * Returns the solver of the current thread
+     * @return Solver: the solver, collecting its stats if collectStats is set
+     */
+    private Solver getSolver() {
+        Solver solver = solvers.get();
+        solver.collectStats = collectStats;
+        return solver;
+    }
+
+    /**
+     * Writes the solutions of solve, in the order of the input, while the
+     *   input is being read
+     */
+    private class OutputThread extends Thread {
+
+        //Marks the end of the input in the queue
+        private final Future<Solution> end = CompletableFuture.completedFuture(null);
+
+        //The solutions being computed, oldest first
+        private final BlockingQueue<Future<Solution>> pending =
+                new ArrayBlockingQueue<>(maxPending);
+
+        private final Writer output;
+
+        //What stopped the thread before the end of the input, if anything
+        private volatile Exception failure;
+
+        OutputThread(Writer output) {
+            super("batch-output");
+            setDaemon(true);
+            this.output = output;
+        }
+
+        /**
+         * Queues the solution of the next puzzle, waiting if maxPending
+         *   solutions are already waiting to be written
+         * @param solution: the solution being computed
+         * @throws IOException: if the solutions can no longer be written
+         */
+        void add(Future<Solution> solution) throws IOException {
+            try {
+                while (!pending.offer(solution, 10, TimeUnit.MILLISECONDS)) {
+                    checkFailure();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while solving", e);
+            }
+            checkFailure();
+        }
+
+        /**
+         * Waits until all the queued solutions are written and flushed
+         * @throws IOException: if they could not all be written
+         */
+        void finish() throws IOException {
+            add(end);
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while solving", e);
+            }
+            checkFailure();
+        }
+
+        /**
+         * Throws what stopped the thread, if it stopped
+         */
+        private void checkFailure() throws IOException {
+            Exception e = failure;
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e != null) {
+                throw (RuntimeException) e;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean written = false;
+                while (true) {
+                    Future<Solution> solution = pending.peek();
+                    if (written && (solution == null || !solution.isDone())) {
+                        //Nothing more can be written yet: the lines written so
+                        //  far go out before waiting, so a slow producer gets
+                        //  each solution at once
+                        flush();
+                        written = false;
+                    }
+                    solution = pending.take();
+                    if (solution == end) {
+                        break;
+                    }
+                    write(solution, output);
+                    written = true;
+                }
+                flush();
+            } catch (InterruptedException e) {
+                failure = new IOException("Interrupted while solving", e);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        private void flush() throws OutputException {
+            try {
+                output.flush();
+            } catch (IOException e) {
+                throw new OutputException(e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the solution of the oldest puzzle, then writes it
+     * @param future: the solution being computed
+     * @param output: where the solution is written
+     */
+    private void write(Future<Solution> future, Writer output) throws IOException {
+        Solution solution;
+        try {
+            solution = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while solving", e);
+        } catch (ExecutionException e) {
+            throw new IOException("A puzzle could not be solved", e.getCause());
+        }
+
+        try {
+            writeLine(solution, output);
+        } catch (IOException e) {
+            throw new OutputException(e);
+        }
+    }
+
+    /**
+     * Counts a solution and writes its line
+     * @param solution: the solution of the oldest puzzle
+     * @param output: where the solution is written
+     */
+    private void writeLine(Solution solution, Writer output) throws IOException {
+        if (solution == Solution.INVALID) {
+            invalid++;
+            output.write("invalid\n");
+            return;
+        }
+        puzzles++;
+        latencies.record(solution.nanos);
+        if (solution.result.getStats() != null) {
+            stats.add(solution.result.getStats());
+        }
+        switch (solution.result.getStatus()) {
+            case SOLVED:
+                output.write(solution.result.getSolutionString());
+                break;
+            case MULTIPLE:
+                multiple++;
+                output.write(solution.result.getSolutionString());
+                output.write(" multiple");
+                break;
+            default:
+                unsolvable++;
+                output.write("unsolvable");
+        }
+        output.write('\n');
+    }
+
+    /**
+     * Prints the number of puzzles solved, the throughput and the latencies
+     * @param out: where to print the report
+     */
+    public synchronized void printReport(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.println(String.format("%d puzzles (%d unsolvable, %d with several solutions)"
+                + " in %.3f s on %d threads: %.0f puzzles/s",
+                puzzles, unsolvable, multiple, seconds, threads,
+                seconds == 0 ? 0 : puzzles / seconds));
+        if (invalid > 0) {
+            out.println(invalid + " invalid puzzles could not be read");
+        }
+        out.println(String.format("Latency per puzzle: mean %.1f us, p50 %.1f us,"
+                + " p99 %.1f us, max %.1f us",
+                latencies.getMean() / 1000, latencies.getPercentile(0.50) / 1000.0,
+                latencies.getPercentile(0.99) / 1000.0, latencies.getMax() / 1000.0));
+        if (cache != null) {
+            out.println(String.format("Cache: %d hits, %d misses, %d evictions, %d of %d entries",
+                    cache.getHits(), cache.getMisses(), cache.getEvictions(),
+                    cache.size(), cache.getCapacity()));
+        }
+        if (collectStats) {
+            stats.print(out);
+        }
+    }
+
+    public long getPuzzles() {
+        return puzzles;
+    }
+
+    /**
+     * Returns the number of puzzles that could not be read, which are not
+     *   counted by getPuzzles
+     * @return long
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns the work done on all the puzzles solved so far
+     * @return SolverStats: the stats, all 0 unless collectStats is set
+     */
+    public synchronized SolverStats getStats() {
+        return stats;
+    }
+
+    /**
+     * The result of a puzzle and the time spent solving it
+     */
+    private static class Solution {
+
+        //A puzzle that could not be read
+        static final Solution INVALID = new Solution(null, 0);
+
+        final SolveResult result;
+        final long nanos;
+
+        Solution(SolveResult result, long nanos) {
+            this.result = result;
+            this.nanos = nanos;
+        }
+    }
+}
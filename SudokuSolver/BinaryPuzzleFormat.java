@@ -0,0 +1,177 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class defines the binary format of BinaryPuzzleWriter and
+ *   BinaryPuzzleReader, which stores puzzles, and optionally their
+ *   solutions, in fixed-size records:
+ *   - a header of HEADER_LENGTH bytes: the magic "SDKB", the version of the
+ *     format (short), the box size (byte), the flags (byte, SOLUTIONS if the
+ *     records have a solution), the length of a record (int), the number of
+ *     records per block (int), the number of records (long) and the offset
+ *     of the block index (long)
+ *   - the records, back to back. A record packs the values of the cells of
+ *     the puzzle, then of its solution, on bitsPerCell bits each (4 bits,
+ *     a nibble, for a 9x9 board), then the status of the solution on 2 bits,
+ *     and is padded to a whole byte: 82 bytes for a 9x9 puzzle and its
+ *     solution, 41 for a puzzle alone
+ *   - the block index: for each block of recordsPerBlock records, its offset
+ *     (long) and the CRC32 of its bytes (int), checked by the reader before
+ *     it decodes the block
+ * All the numbers are big-endian. A reader refuses a version newer than its
+ *   own.
+ * @author morel
+ */
+final class BinaryPuzzleFormat {
+
+    static final byte[] MAGIC = {'S', 'D', 'K', 'B'};
+    static final short VERSION = 1;
+
+    static final int HEADER_LENGTH = 32;
+    static final int INDEX_ENTRY_LENGTH = 12;
+
+    //Flag of the records that have a solution
+    static final int SOLUTIONS = 1;
+
+    static final int DEFAULT_RECORDS_PER_BLOCK = 1024;
+
+    //Status of a record: not solved, or the status of the solve
+    static final int NOT_SOLVED = 0;
+    static final int SOLVED = 1;
+    static final int MULTIPLE = 2;
+    static final int UNSOLVABLE = 3;
+
+    private BinaryPuzzleFormat() {
+    }
+
+    /**
+     * Returns the number of bits of a value, 0 to size
+     * @param geometry: the shape of the boards
+     * @return int: 4 for a 9x9 board, 5 for 16x16 and 25x25
+     */
+    static int bitsPerCell(Geometry geometry) {
+        return 32 - Integer.numberOfLeadingZeros(geometry.size);
+    }
+
+    /**
+     * Returns the length of a record
+     * @param geometry: the shape of the boards
+     * @param solutions: whether the records have a solution
+     * @return int: the number of bytes
+     */
+    static int recordLength(Geometry geometry, boolean solutions) {
+        int bits = geometry.cellCount * bitsPerCell(geometry) * (solutions ? 2 : 1) + 2;
+        return (bits + 7) / 8;
+    }
+
+    static int statusCode(SolveResult.Status status) {
+        switch (status) {
+            case SOLVED:
+                return SOLVED;
+            case MULTIPLE:
+                return MULTIPLE;
+            default:
+                return UNSOLVABLE;
+        }
+    }
+
+    /**
+     * Returns the status of a record
+     * @param code: the status code of the record
+     * @return SolveResult.Status: the status, or null if it was not solved
+     */
+    static SolveResult.Status status(int code) {
+        switch (code) {
+            case SOLVED:
+                return SolveResult.Status.SOLVED;
+            case MULTIPLE:
+                return SolveResult.Status.MULTIPLE;
+            case UNSOLVABLE:
+                return SolveResult.Status.UNSOLVABLE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Packs a record at the position of the buffer, and moves the position
+     *   after it
+     * @param puzzle: the values of the puzzle, row after row, 0 if empty
+     * @param solution: the values of the solution, or null if the records
+     *    have none. All 0 if the puzzle was not solved or has no solution
+     * @param status: the status code
+     * @param bits: the bits per cell
+     * @param buffer: gets the record
+     */
+    static void pack(int[] puzzle, int[] solution, int status, int bits, ByteBuffer buffer) {
+        long pending = 0;
+        int pendingBits = 0;
+        int cells = puzzle.length * (solution == null ? 1 : 2);
+        for (int i = 0; i <= cells; i++) {
+            int value;
+            int width = bits;
+            if (i == cells) {
+                value = status;
+                width = 2;
+            } else if (i < puzzle.length) {
+                value = puzzle[i];
+            } else {
+                value = solution[i - puzzle.length];
+            }
+            pending = pending << width | value;
+            pendingBits += width;
+            while (pendingBits >= 8) {
+                pendingBits -= 8;
+                buffer.put((byte) (pending >>> pendingBits));
+            }
+        }
+        if (pendingBits > 0) {
+            buffer.put((byte) (pending << (8 - pendingBits)));
+        }
+    }
+
+    /**
+     * Unpacks a record
+     * @param buffer: the bytes of the record
+     * @param offset: the index of the first byte of the record
+     * @param bits: the bits per cell
+     * @param size: the biggest value of a cell
+     * @param puzzle: gets the values of the puzzle
+     * @param solution: gets the values of the solution, or null if the
+     *    records have none
+     * @return int: the status code
+     * @throws IOException: if a cell has an invalid value
+     */
+    static int unpack(ByteBuffer buffer, int offset, int bits, int size, int[] puzzle,
+            int[] solution) throws IOException {
+        int mask = (1 << bits) - 1;
+        long pending = 0;
+        int pendingBits = 0;
+        int position = offset;
+        int cells = puzzle.length * (solution == null ? 1 : 2);
+        for (int i = 0; i < cells; i++) {
+            while (pendingBits < bits) {
+                pending = pending << 8 | (buffer.get(position++) & 0xFF);
+                pendingBits += 8;
+            }
+            pendingBits -= bits;
+            int value = (int) (pending >>> pendingBits) & mask;
+            if (value > size) {
+                throw new IOException("Invalid value " + value + " in the record at byte " + offset);
+            }
+            if (i < puzzle.length) {
+                puzzle[i] = value;
+            } else {
+                solution[i - puzzle.length] = value;
+            }
+        }
+        //The status follows the last cell
+        if (pendingBits < 2) {
+            pending = pending << 8 | (buffer.get(position) & 0xFF);
+            pendingBits += 8;
+        }
+        return (int) (pending >>> (pendingBits - 2)) & 3;
+    }
+}
@@ -0,0 +1,239 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * This class reads a file written by BinaryPuzzleWriter (see
+ *   BinaryPuzzleFormat). The records are read a block at a time, and the
+ *   CRC32 of each block is checked against the block index before any of
+ *   its records is decoded.
+ * The records can be read one after the other with next, or in any order
+ *   with seek, which only reads the block of the record. Each record is
+ *   decoded straight into the board of a grid; its status and solution are
+ *   then given by getStatus and getSolution.
+ * A reader keeps the block it read last, so it must not be used by several
+ *   threads at once; several readers can read the same file.
+ * @author morel
+ */
+public class BinaryPuzzleReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final Geometry geometry;
+    private final boolean solutions;
+    private final int bits;
+    private final int recordLength;
+    private final int recordsPerBlock;
+    private final long recordCount;
+
+    //The offset and the CRC32 of each block
+    private final long[] blockOffsets;
+    private final int[] blockChecksums;
+
+    //The block read last, and its number
+    private final ByteBuffer block;
+    private int currentBlock = -1;
+
+    //The next record read by next
+    private long record;
+
+    //The puzzle, the solution and the status of the record read last
+    private final int[] values;
+    private final int[] solution;
+    private int status;
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Opens a file and reads its header and its block index
+     * @param file: the file
+     * @throws IOException: if the file cannot be read, or is not a file of
+     *    this format or of a version this reader knows
+     */
+    public BinaryPuzzleReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(BinaryPuzzleFormat.HEADER_LENGTH);
+            readFully(header, 0);
+            byte[] magic = new byte[BinaryPuzzleFormat.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, BinaryPuzzleFormat.MAGIC)) {
+                throw new IOException(file + " is not a puzzle file, or was not closed");
+            }
+            short version = header.getShort();
+            if (version < 1 || version > BinaryPuzzleFormat.VERSION) {
+                throw new IOException(file + " has the version " + version
+                        + " of the format, this reader knows up to " + BinaryPuzzleFormat.VERSION);
+            }
+            int boxSize = header.get();
+            if (boxSize < 2 || boxSize > Geometry.MAX_BOX_SIZE) {
+                throw new IOException(file + " has an invalid box size: " + boxSize);
+            }
+            geometry = Geometry.of(boxSize);
+            solutions = (header.get() & BinaryPuzzleFormat.SOLUTIONS) != 0;
+            recordLength = header.getInt();
+            recordsPerBlock = header.getInt();
+            recordCount = header.getLong();
+            long indexOffset = header.getLong();
+            if (recordLength != BinaryPuzzleFormat.recordLength(geometry, solutions)
+                    || recordsPerBlock < 1 || recordCount < 0) {
+                throw new IOException(file + " has an invalid header");
+            }
+            bits = BinaryPuzzleFormat.bitsPerCell(geometry);
+
+            int blockCount = (int) ((recordCount + recordsPerBlock - 1) / recordsPerBlock);
+            ByteBuffer index = ByteBuffer.allocate(blockCount * BinaryPuzzleFormat.INDEX_ENTRY_LENGTH);
+            readFully(index, indexOffset);
+            blockOffsets = new long[blockCount];
+            blockChecksums = new int[blockCount];
+            for (int b = 0; b < blockCount; b++) {
+                blockOffsets[b] = index.getLong();
+                blockChecksums[b] = index.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        block = ByteBuffer.allocate(recordLength * recordsPerBlock);
+        values = new int[geometry.cellCount];
+        solution = solutions ? new int[geometry.cellCount] : null;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("The file is truncated");
+            }
+        }
+        buffer.flip();
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Checks whether the records have a solution
+     * @return boolean
+     */
+    public boolean hasSolutions() {
+        return solutions;
+    }
+
+    /**
+     * Moves to a record, which is read by the next call to next
+     * @param record: the number of the record, from 0
+     */
+    public void seek(long record) {
+        if (record < 0 || record > recordCount) {
+            throw new IndexOutOfBoundsException("Record " + record + " of " + recordCount);
+        }
+        this.record = record;
+    }
+
+    /**
+     * Reads the next record into a grid, whose markups are initiated as
+     *   with Grid.setValues
+     * @param grid: the grid that gets the values of the puzzle, of the
+     *    geometry of the file
+     * @return boolean: false if there are no more records
+     * @throws IOException: if the file cannot be read, or a block is corrupt
+     */
+    public boolean next(Grid grid) throws IOException {
+        if (grid.geometry != geometry) {
+            throw new IllegalArgumentException("The file has " + geometry.size + "x"
+                    + geometry.size + " boards");
+        }
+        if (!next()) {
+            return false;
+        }
+        grid.setValues(values);
+        return true;
+    }
+
+    /**
+     * Reads the next record, whose values are then given by getPuzzle
+     * @return boolean: false if there are no more records
+     * @throws IOException: if the file cannot be read, or a block is corrupt
+     */
+    public boolean next() throws IOException {
+        if (record >= recordCount) {
+            return false;
+        }
+        int blockNumber = (int) (record / recordsPerBlock);
+        if (blockNumber != currentBlock) {
+            readBlock(blockNumber);
+        }
+        int offset = (int) (record % recordsPerBlock) * recordLength;
+        status = BinaryPuzzleFormat.unpack(block, offset, bits, geometry.size, values, solution);
+        record++;
+        return true;
+    }
+
+    /**
+     * Reads a block and checks its CRC32
+     * @param blockNumber: the number of the block
+     */
+    private void readBlock(int blockNumber) throws IOException {
+        long first = (long) blockNumber * recordsPerBlock;
+        int length = (int) Math.min(recordsPerBlock, recordCount - first) * recordLength;
+        block.clear();
+        block.limit(length);
+        readFully(block, blockOffsets[blockNumber]);
+        crc.reset();
+        crc.update(block.array(), 0, length);
+        if ((int) crc.getValue() != blockChecksums[blockNumber]) {
+            currentBlock = -1;
+            throw new IOException("The block " + blockNumber + " (records " + first
+                    + " to " + (first + length / recordLength - 1) + ") is corrupt");
+        }
+        currentBlock = blockNumber;
+    }
+
+    /**
+     * Returns the values of the puzzle read last
+     * @return int[]: the values, row after row, 0 if empty. The array is
+     *    reused by the next read
+     */
+    public int[] getPuzzle() {
+        return values;
+    }
+
+    /**
+     * Returns the status of the solution of the record read last
+     * @return SolveResult.Status: the status, or null if the puzzle was not
+     *    solved
+     */
+    public SolveResult.Status getStatus() {
+        return BinaryPuzzleFormat.status(status);
+    }
+
+    /**
+     * Returns the solution of the record read last
+     * @return int[]: the values, row after row, or null if the file has no
+     *    solutions or the puzzle has none. The array is reused by the next
+     *    read
+     */
+    public int[] getSolution() {
+        if (solution == null || status == BinaryPuzzleFormat.NOT_SOLVED
+                || status == BinaryPuzzleFormat.UNSOLVABLE) {
+            return null;
+        }
+        return solution;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
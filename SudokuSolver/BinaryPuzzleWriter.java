@@ -0,0 +1,197 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * This class writes puzzles, and optionally their solutions, to a file of
+ *   the binary format of BinaryPuzzleFormat. The records are packed in a
+ *   buffer of one block, which is written with its CRC32 once full; the
+ *   block index and the final header are written by close.
+ * The puzzles can be given as arrays, or read straight from the board of a
+ *   grid.
+ * @author morel
+ */
+public class BinaryPuzzleWriter implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final Geometry geometry;
+    private final boolean solutions;
+    private final int bits;
+    private final int recordLength;
+    private final int recordsPerBlock;
+
+    //The records of the current block
+    private final ByteBuffer block;
+
+    //The offset and the CRC32 of each block written
+    private long[] blockOffsets = new long[16];
+    private int[] blockChecksums = new int[16];
+    private int blockCount;
+
+    private final CRC32 crc = new CRC32();
+    private long recordCount;
+    private long position = BinaryPuzzleFormat.HEADER_LENGTH;
+
+    //The values of the puzzle being written, when it comes from a grid
+    private final int[] values;
+
+    //The solution written for the puzzles that have none: all 0
+    private final int[] noSolution;
+
+    public BinaryPuzzleWriter(Path file, Geometry geometry, boolean solutions) throws IOException {
+        this(file, geometry, solutions, BinaryPuzzleFormat.DEFAULT_RECORDS_PER_BLOCK);
+    }
+
+    /**
+     * Creates the file, replacing it if it exists
+     * @param file: the file
+     * @param geometry: the shape of all the boards of the file
+     * @param solutions: whether the records have a solution
+     * @param recordsPerBlock: the number of records of a block
+     * @throws IOException: if the file cannot be created
+     */
+    public BinaryPuzzleWriter(Path file, Geometry geometry, boolean solutions,
+            int recordsPerBlock) throws IOException {
+        if (recordsPerBlock < 1) {
+            throw new IllegalArgumentException("A block must have at least 1 record: " + recordsPerBlock);
+        }
+        this.geometry = geometry;
+        this.solutions = solutions;
+        this.recordsPerBlock = recordsPerBlock;
+        bits = BinaryPuzzleFormat.bitsPerCell(geometry);
+        recordLength = BinaryPuzzleFormat.recordLength(geometry, solutions);
+        block = ByteBuffer.allocate(recordLength * recordsPerBlock);
+        values = new int[geometry.cellCount];
+        noSolution = new int[geometry.cellCount];
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Writes a puzzle that was not solved
+     * @param puzzle: the values of the puzzle, row after row, 0 if empty
+     * @throws IOException: if the file cannot be written
+     */
+    public void write(int[] puzzle) throws IOException {
+        write(puzzle, null, BinaryPuzzleFormat.NOT_SOLVED);
+    }
+
+    /**
+     * Writes a puzzle and the result of its solve. The solution is only
+     *   written if the file has solutions
+     * @param puzzle: the values of the puzzle, row after row, 0 if empty
+     * @param result: the result of the solve of the puzzle
+     * @throws IOException: if the file cannot be written
+     */
+    public void write(int[] puzzle, SolveResult result) throws IOException {
+        write(puzzle, result.getSolution(), BinaryPuzzleFormat.statusCode(result.getStatus()));
+    }
+
+    /**
+     * Writes the values of a grid as a puzzle that was not solved, reading
+     *   them straight from its board
+     * @param grid: the grid
+     * @throws IOException: if the file cannot be written
+     */
+    public void write(Grid grid) throws IOException {
+        for (int index = 0; index < values.length; index++) {
+            values[index] = grid.getValue(index);
+        }
+        write(values, null, BinaryPuzzleFormat.NOT_SOLVED);
+    }
+
+    private void write(int[] puzzle, int[] solution, int status) throws IOException {
+        if (puzzle.length != geometry.cellCount) {
+            throw new IllegalArgumentException("The file has " + geometry.size + "x"
+                    + geometry.size + " boards, not " + puzzle.length + " cells");
+        }
+        if (!solutions) {
+            solution = null;
+        } else if (solution == null) {
+            solution = noSolution;
+        }
+        BinaryPuzzleFormat.pack(puzzle, solution, status, bits, block);
+        recordCount++;
+        if (!block.hasRemaining()) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the records of the current block, and adds it to the index
+     */
+    private void writeBlock() throws IOException {
+        block.flip();
+        if (!block.hasRemaining()) {
+            block.clear();
+            return;
+        }
+        crc.reset();
+        crc.update(block.array(), 0, block.limit());
+        if (blockCount == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, 2 * blockCount);
+            blockChecksums = Arrays.copyOf(blockChecksums, 2 * blockCount);
+        }
+        blockOffsets[blockCount] = position;
+        blockChecksums[blockCount] = (int) crc.getValue();
+        blockCount++;
+        position += writeFully(block, position);
+        block.clear();
+    }
+
+    private long writeFully(ByteBuffer buffer, long at) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, at + written);
+        }
+        return written;
+    }
+
+    /**
+     * Writes the last block, the block index and the header, then closes the
+     *   file
+     * @throws IOException: if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBlock();
+            long indexOffset = position;
+            ByteBuffer index = ByteBuffer.allocate(blockCount * BinaryPuzzleFormat.INDEX_ENTRY_LENGTH);
+            for (int b = 0; b < blockCount; b++) {
+                index.putLong(blockOffsets[b]);
+                index.putInt(blockChecksums[b]);
+            }
+            index.flip();
+            writeFully(index, indexOffset);
+
+            ByteBuffer header = ByteBuffer.allocate(BinaryPuzzleFormat.HEADER_LENGTH);
+            header.put(BinaryPuzzleFormat.MAGIC);
+            header.putShort(BinaryPuzzleFormat.VERSION);
+            header.put((byte) geometry.boxSize);
+            header.put((byte) (solutions ? BinaryPuzzleFormat.SOLUTIONS : 0));
+            header.putInt(recordLength);
+            header.putInt(recordsPerBlock);
+            header.putLong(recordCount);
+            header.putLong(indexOffset);
+            header.flip();
+            writeFully(header, 0);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+
+/**
+ * This class is an immutable snapshot of the values and markups of a grid.
+ *   Each cell is packed in one int: the mask of its markup in the low bits
+ *   (bit v for the value v, as in CandidateSet), and its value above
+ *   VALUE_SHIFT. A 9x9 board is one array of 81 ints, instead of 81 cells
+ *   holding each a set of numbers.
+ * The Grid keeps its cells in an array of the same format, so a snapshot is
+ *   one copy of that array (Grid.snapshot), and Grid.restore copies it back
+ *   without allocating anything. The static methods read and write the
+ *   packed ints, for the code that works on the array of the grid.
+ * @author morel
+ */
+public final class BoardState {
+
+    //Position of the value in a packed cell. The bits below hold the markup,
+    //  up to the value 25 of a 25x25 board
+    static final int VALUE_SHIFT = 26;
+
+    //The bits of the markup in a packed cell
+    static final int MARKUP_MASK = (1 << VALUE_SHIFT) - 1;
+
+    private final Geometry geometry;
+
+    //One packed cell per cell of the board, indexed by row * size + column
+    private final int[] cells;
+
+    BoardState(Geometry geometry, int[] cells) {
+        this.geometry = geometry;
+        this.cells = cells;
+    }
+
+    /**
+     * Packs the value and the markup of a cell into one int
+     * @param value: the value of the cell, 0 if it has none
+     * @param markup: the mask of the markup
+     * @return int: the packed cell
+     */
+    static int pack(int value, int markup) {
+        return value << VALUE_SHIFT | markup;
+    }
+
+    /**
+     * Returns the value of a packed cell
+     * @param cell: the packed cell
+     * @return int: the value, 0 if the cell has none
+     */
+    static int value(int cell) {
+        return cell >>> VALUE_SHIFT;
+    }
+
+    /**
+     * Returns the markup of a packed cell
+     * @param cell: the packed cell
+     * @return int: the mask of the markup
+     */
+    static int markup(int cell) {
+        return cell & MARKUP_MASK;
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Returns the value of a cell
+     * @param index: row * size + column
+     * @return int: the value, 0 if the cell has none
+     */
+    public int getValue(int index) {
+        return value(cells[index]);
+    }
+
+    /**
+     * Returns the markup of a cell
+     * @param index: row * size + column
+     * @return int: the mask of the markup (see CandidateSet)
+     */
+    public int getMarkup(int index) {
+        return markup(cells[index]);
+    }
+
+    /**
+     * Copies the packed cells into an array, in the format of Grid.saveState
+     * @param state: an array of at least geometry.cellCount elements
+     */
+    void copyTo(int[] state) {
+        System.arraycopy(cells, 0, state, 0, cells.length);
+    }
+
+    /**
+     * Two snapshots are equal if all their cells have the same value and the
+     *   same markup
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof BoardState
+                && ((BoardState) other).geometry == geometry
+                && Arrays.equals(((BoardState) other).cells, cells);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(cells);
+    }
+
+    /**
+     * The symbols of the values, row after row, 0 for an empty cell, as read
+     *   by PuzzleReader
+     * @return String
+     */
+    @Override
+    public String toString() {
+        char[] symbols = new char[cells.length];
+        for (int index = 0; index < cells.length; index++) {
+            symbols[index] = PuzzleReader.toSymbol(value(cells[index]));
+        }
+        return new String(symbols);
+    }
+}
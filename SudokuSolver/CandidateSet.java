@@ -0,0 +1,250 @@
+package SudokuSolver;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class defines the set of candidates (markup) of a cell. The candidates
+ *   are stored in a single int used as a bit mask: the value v is in the set
+ *   if the bit v of the mask is set. Bit 0 is never used, since 0 means that
+ *   a cell has no value.
+ * The static methods work directly on masks, so that code that needs to be
+ *   fast can use plain ints without creating any object.
+ * @author morel
+ */
+public class CandidateSet implements Iterable<Integer>, Comparable<CandidateSet> {
+
+    //Highest value that fits in the mask
+    public static final int MAX_VALUE = 30;
+
+    //The mask of the candidates
+    private int bits;
+
+    public CandidateSet() {
+    }
+
+    public CandidateSet(int bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Returns the mask containing only the given value
+     * @param value: the value, from 1 to MAX_VALUE
+     * @return int: the mask of the value, 0 if the value is out of range
+     */
+    public static int bit(int value) {
+        if (value <= 0 || value > MAX_VALUE) {
+            return 0;
+        }
+        return 1 << value;
+    }
+
+    /**
+     * Returns the mask containing all the values from 1 to size
+     * @param size: the highest value of the mask
+     * @return int: the full mask
+     */
+    public static int fullMask(int size) {
+        return ((1 << size) - 1) << 1;
+    }
+
+    /**
+     * Returns the number of values in the mask (popcount)
+     * @param mask: the mask
+     * @return int: the number of values
+     */
+    public static int size(int mask) {
+        return Integer.bitCount(mask);
+    }
+
+    /**
+     * Returns the lowest value of the mask
+     * @param mask: the mask
+     * @return int: the lowest value, 0 if the mask is empty
+     */
+    public static int first(int mask) {
+        if (mask == 0) {
+            return 0;
+        }
+        return Integer.numberOfTrailingZeros(mask);
+    }
+
+    /**
+     * Returns the lowest value of the mask that is greater than the given one.
+     *   Used to iterate over a mask without creating an iterator:
+     *   for (int v = first(mask); v != 0; v = next(mask, v))
+     * @param mask: the mask
+     * @param value: the current value
+     * @return int: the next value, 0 if there is none
+     */
+    public static int next(int mask, int value) {
+        return first(mask & (-2 << value));
+    }
+
+    /**
+     * Returns a key that orders the masks the same way as the numbers made of
+     *   their values written in increasing order ({3} < {1, 2} since 3 < 12):
+     *   first by size, then by their lowest value that the other mask does
+     *   not have. It is computed in constant time, and it works for masks
+     *   of any size, where the numbers would overflow
+     * @param mask: the mask
+     * @return long: the key of the mask, equal keys meaning equal masks
+     */
+    public static long orderKey(int mask) {
+        //Reversing the bits puts the lowest values first, and the complement
+        //  makes the set that has the lowest differing value the smallest
+        return ((long) Integer.bitCount(mask) << 32) | (~Integer.reverse(mask) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Checks whether a value is in the mask
+     * @param mask: the mask
+     * @param value: the value to look for
+     * @return boolean
+     */
+    public static boolean contains(int mask, int value) {
+        return (mask & bit(value)) != 0;
+    }
+
+    /**
+     * Adds a value to the set
+     * @param value: the value to add
+     * @return boolean: true if the value was added, false if it was already in
+     */
+    public boolean add(int value) {
+        int old = bits;
+        bits |= bit(value);
+        return old != bits;
+    }
+
+    /**
+     * Removes a value from the set
+     * @param value: the value to remove
+     * @return boolean: true if the value was removed, false if it was not in
+     *    the set
+     */
+    public boolean remove(int value) {
+        int old = bits;
+        bits &= ~bit(value);
+        return old != bits;
+    }
+
+    /**
+     * Removes all the values of the given mask from the set
+     * @param mask: the values to remove
+     * @return boolean: true if at least one value was removed
+     */
+    public boolean removeAll(int mask) {
+        int old = bits;
+        bits &= ~mask;
+        return old != bits;
+    }
+
+    /**
+     * Removes all the values of the given set from this set
+     * @param other: the values to remove
+     * @return boolean: true if at least one value was removed
+     */
+    public boolean removeAll(CandidateSet other) {
+        return removeAll(other.bits);
+    }
+
+    public boolean contains(int value) {
+        return contains(bits, value);
+    }
+
+    public int size() {
+        return size(bits);
+    }
+
+    public boolean isEmpty() {
+        return bits == 0;
+    }
+
+    /**
+     * Returns the lowest value of the set
+     * @return int: the lowest value, 0 if the set is empty
+     */
+    public int first() {
+        return first(bits);
+    }
+
+    /**
+     * Removes and returns the lowest value of the set
+     * @return int: the lowest value, 0 if the set is empty
+     */
+    public int pollFirst() {
+        int first = first(bits);
+        bits &= bits - 1;
+        return first;
+    }
+
+    public void clear() {
+        bits = 0;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public void setBits(int bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Iterates over the values in increasing order. Only kept as an adapter
+     *   for code that prints the markups, the rest of the solver should use
+     *   the mask directly
+     * @return Iterator<Integer>
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            int remaining = bits;
+
+            @Override
+            public boolean hasNext() {
+                return remaining != 0;
+            }
+
+            @Override
+            public Integer next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                int value = first(remaining);
+                remaining &= remaining - 1;
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public int compareTo(CandidateSet other) {
+        return Long.compare(orderKey(bits), orderKey(other.bits));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CandidateSet && ((CandidateSet) other).bits == bits;
+    }
+
+    @Override
+    public int hashCode() {
+        return bits;
+    }
+
+    /**
+     * The values of the set written one after the other, like the markups
+     *   are printed
+     * @return String
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int v = first(bits); v != 0; v = next(bits, v)) {
+            result.append(v);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,323 @@
+package SudokuSolver;
+
+import java.util.ArrayList;
+
+/**
+ * This class finds the canonical form of a puzzle: the same puzzle for all
+ *   the puzzles that are one of its symmetric variants, so that they can
+ *   share one entry of a SolutionCache. The variants are the transforms
+ *   that keep the rules of the game:
+ *   - rotations and reflections
+ *   - the permutations of the bands (rows of boxes) and of the stacks
+ *     (columns of boxes). On the boards bigger than 9x9, where there would
+ *     be too many of them, only the reversal of their order is used
+ *   - the relabeling of the values
+ * The canonical form is the smallest one, as a string of symbols, among
+ *   all the transforms, each one with its values relabeled in the order
+ *   they are first met (the first value becomes 1, the next new one 2...).
+ *   A transform is dropped at its first cell that is bigger than in the
+ *   best one so far, so most of them are dropped after a few cells.
+ * Before that, the transforms are filtered on their first row alone. The
+ *   values of a row are all different, so they are labeled 1, 2... in the
+ *   order of the row, and the first row of a transform only depends on
+ *   which of its cells have a value: the transforms whose first row has a
+ *   value where another one has an empty cell first cannot give the
+ *   smallest form, and are not compared at all. The first row of a
+ *   transform is a row or a column of the puzzle with its boxes in another
+ *   order, some of them reversed, so the filter is made from one mask of
+ *   cells with a value per line, with one lookup per box.
+ * The transforms are shared by all the instances of a size. An instance
+ *   keeps the form it computed last, and its arrays, so each thread uses
+ *   its own.
+ * @author morel
+ */
+public class CanonicalForm {
+
+    //The transforms of each box size, built on first use
+    private static final int[][][] transformsByBoxSize = new int[Geometry.MAX_BOX_SIZE + 1][][];
+
+    final Geometry geometry;
+
+    //For each transform, the cell of the puzzle moved to each cell of the
+    //  transformed puzzle
+    private final int[][] transforms;
+
+    //The canonical form, and the puzzle being compared with it
+    private final int[] values;
+    private final int[] candidate;
+
+    //The value of the canonical form given to each value of the puzzle, and
+    //  back, for the transform of the canonical form
+    private final int[] labels;
+    private final int[] inverseLabels;
+    private final int[] candidateLabels;
+
+    //For each transform, the line of the puzzle moved to its first row: a
+    //  row, or size + the column
+    private final int[] firstLines;
+
+    //For each transform and box of its first row, at t * boxSize + box, the
+    //  box of the line moved there, times 2, plus 1 if its cells are reversed
+    private final int[] firstBoxes;
+
+    //The cells with a value of each line of the puzzle, the first one being
+    //  the lowest bit
+    private final int[] lineMasks;
+
+    //The masks of the boxes of a line, with their bits reversed
+    private final int[] reversedMasks;
+
+    //The cells of the first row with a value, for each transform, the first
+    //  cell being the highest bit
+    private final int[] firstRows;
+
+    //The transform of the canonical form
+    private int transform;
+
+    public CanonicalForm(Geometry geometry) {
+        this.geometry = geometry;
+        transforms = getTransforms(geometry);
+        values = new int[geometry.cellCount];
+        candidate = new int[geometry.cellCount];
+        labels = new int[geometry.size + 1];
+        inverseLabels = new int[geometry.size + 1];
+        candidateLabels = new int[geometry.size + 1];
+        firstRows = new int[transforms.length];
+        lineMasks = new int[2 * geometry.size];
+
+        int boxSize = geometry.boxSize;
+        reversedMasks = new int[1 << boxSize];
+        for (int mask = 0; mask < reversedMasks.length; mask++) {
+            for (int k = 0; k < boxSize; k++) {
+                if ((mask & (1 << k)) != 0) {
+                    reversedMasks[mask] |= 1 << (boxSize - 1 - k);
+                }
+            }
+        }
+
+        firstLines = new int[transforms.length];
+        firstBoxes = new int[transforms.length * boxSize];
+        for (int t = 0; t < transforms.length; t++) {
+            int[] cells = transforms[t];
+            //The cells of a row of the puzzle are in a row or in a column
+            boolean isRow = cells[0] / geometry.size == cells[1] / geometry.size;
+            firstLines[t] = isRow ? cells[0] / geometry.size
+                    : geometry.size + cells[0] % geometry.size;
+            for (int box = 0; box < boxSize; box++) {
+                int first = cells[box * boxSize];
+                int second = cells[box * boxSize + 1];
+                int position = isRow ? first % geometry.size : first / geometry.size;
+                boolean reversed = second < first;
+                firstBoxes[t * boxSize + box] = position / boxSize * 2 + (reversed ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the transforms of the boards of a geometry
+     * @param geometry: the geometry of the boards
+     * @return int[][]: the shared transforms
+     */
+    private static synchronized int[][] getTransforms(Geometry geometry) {
+        int boxSize = geometry.boxSize;
+        if (transformsByBoxSize[boxSize] == null) {
+            transformsByBoxSize[boxSize] = buildTransforms(geometry);
+        }
+        return transformsByBoxSize[boxSize];
+    }
+
+    /**
+     * Builds all the combinations of a transposition, a reversal of the rows
+     *   in each band, a reversal of the columns in each stack, and the
+     *   permutations of the bands and of the stacks. With the transposition
+     *   and the reversals, they include the rotations and reflections
+     * @param geometry: the geometry of the boards
+     * @return int[][]: the transforms
+     */
+    private static int[][] buildTransforms(Geometry geometry) {
+        int boxSize = geometry.boxSize;
+        ArrayList<int[]> permutations = new ArrayList<>();
+        if (boxSize <= 3) {
+            permute(new int[boxSize], 0, 0, permutations);
+        } else {
+            int[] identity = new int[boxSize];
+            int[] reversed = new int[boxSize];
+            for (int k = 0; k < boxSize; k++) {
+                identity[k] = k;
+                reversed[k] = boxSize - 1 - k;
+            }
+            permutations.add(identity);
+            permutations.add(reversed);
+        }
+
+        ArrayList<int[]> transforms = new ArrayList<>();
+        for (int transpose = 0; transpose < 2; transpose++) {
+            for (int flipRows = 0; flipRows < 2; flipRows++) {
+                for (int flipColumns = 0; flipColumns < 2; flipColumns++) {
+                    for (int[] bands : permutations) {
+                        for (int[] stacks : permutations) {
+                            int[] transform = new int[geometry.cellCount];
+                            for (int row = 0; row < geometry.size; row++) {
+                                for (int column = 0; column < geometry.size; column++) {
+                                    int fromRow = bands[row / boxSize] * boxSize
+                                            + (flipRows == 1 ? boxSize - 1 - row % boxSize : row % boxSize);
+                                    int fromColumn = stacks[column / boxSize] * boxSize
+                                            + (flipColumns == 1 ? boxSize - 1 - column % boxSize : column % boxSize);
+                                    transform[geometry.index(row, column)] = transpose == 1
+                                            ? geometry.index(fromColumn, fromRow)
+                                            : geometry.index(fromRow, fromColumn);
+                                }
+                            }
+                            transforms.add(transform);
+                        }
+                    }
+                }
+            }
+        }
+        return transforms.toArray(new int[transforms.size()][]);
+    }
+
+    /**
+     * Adds all the permutations of 0 to permutation.length - 1
+     * @param permutation: the permutation being built
+     * @param length: the number of elements already placed
+     * @param used: the mask of the elements already placed
+     * @param permutations: gets the permutations
+     */
+    private static void permute(int[] permutation, int length, int used,
+            ArrayList<int[]> permutations) {
+        if (length == permutation.length) {
+            permutations.add(permutation.clone());
+            return;
+        }
+        for (int k = 0; k < permutation.length; k++) {
+            if ((used & (1 << k)) == 0) {
+                permutation[length] = k;
+                permute(permutation, length + 1, used | (1 << k), permutations);
+            }
+        }
+    }
+
+    /**
+     * Finds the canonical form of a puzzle
+     * @param puzzle: the values of the puzzle, row after row, 0 if empty
+     */
+    public void compute(int[] puzzle) {
+        int size = geometry.size;
+        int boxSize = geometry.boxSize;
+        int boxMask = (1 << boxSize) - 1;
+        for (int line = 0; line < lineMasks.length; line++) {
+            lineMasks[line] = 0;
+        }
+        for (int row = 0; row < size; row++) {
+            int rowMask = 0;
+            for (int column = 0; column < size; column++) {
+                //1 if the cell has a value, without a branch
+                int filled = -puzzle[row * size + column] >>> 31;
+                rowMask |= filled << column;
+                lineMasks[size + column] |= filled << row;
+            }
+            lineMasks[row] = rowMask;
+        }
+
+        int bestFirstRow = Integer.MAX_VALUE;
+        for (int t = 0; t < transforms.length; t++) {
+            int lineMask = lineMasks[firstLines[t]];
+            int firstRow = 0;
+            for (int b = t * boxSize; b < (t + 1) * boxSize; b++) {
+                int box = firstBoxes[b];
+                int mask = (lineMask >>> (box >> 1) * boxSize) & boxMask;
+                //The first cell of the line is its lowest bit, and has to be
+                //  the highest one of the row
+                firstRow = (firstRow << boxSize)
+                        | ((box & 1) == 0 ? reversedMasks[mask] : mask);
+            }
+            firstRows[t] = firstRow;
+            bestFirstRow = Math.min(bestFirstRow, firstRow);
+        }
+
+        int cellCount = geometry.cellCount;
+        boolean found = false;
+        for (int t = 0; t < transforms.length; t++) {
+            if (firstRows[t] != bestFirstRow) {
+                continue;
+            }
+            int[] cells = transforms[t];
+            for (int value = 0; value <= geometry.size; value++) {
+                candidateLabels[value] = 0;
+            }
+            int nextLabel = 1;
+
+            //Whether the candidate is already smaller than the canonical form
+            boolean smaller = !found;
+            boolean bigger = false;
+            for (int index = 0; index < cellCount; index++) {
+                int value = puzzle[cells[index]];
+                if (value != 0) {
+                    if (candidateLabels[value] == 0) {
+                        candidateLabels[value] = nextLabel++;
+                    }
+                    value = candidateLabels[value];
+                }
+                if (!smaller) {
+                    if (value > values[index]) {
+                        bigger = true;
+                        break;
+                    }
+                    smaller = value < values[index];
+                }
+                candidate[index] = value;
+            }
+            if (!bigger && smaller) {
+                System.arraycopy(candidate, 0, values, 0, cellCount);
+                System.arraycopy(candidateLabels, 0, labels, 0, labels.length);
+                transform = t;
+                found = true;
+                //The values missing from the puzzle get the labels left
+                for (int value = 1; value <= geometry.size; value++) {
+                    if (labels[value] == 0) {
+                        labels[value] = nextLabel++;
+                    }
+                }
+            }
+        }
+        for (int value = 0; value <= geometry.size; value++) {
+            inverseLabels[labels[value]] = value;
+        }
+    }
+
+    /**
+     * Returns the values of the canonical form. They are not copied, so
+     *   they change with the next compute
+     * @return int[]: the values, row after row, 0 if empty
+     */
+    public int[] getValues() {
+        return values;
+    }
+
+    /**
+     * Applies the transform of the canonical form to other values of the
+     *   puzzle, such as its solution
+     * @param original: the values, as in the puzzle
+     * @param canonical: gets the values, as in the canonical form
+     */
+    public void toCanonical(int[] original, int[] canonical) {
+        int[] cells = transforms[transform];
+        for (int index = 0; index < cells.length; index++) {
+            canonical[index] = labels[original[cells[index]]];
+        }
+    }
+
+    /**
+     * Undoes the transform of the canonical form, to give back values of the
+     *   canonical form, such as its solution, in the terms of the puzzle
+     * @param canonical: the values, as in the canonical form
+     * @param original: gets the values, as in the puzzle
+     */
+    public void fromCanonical(int[] canonical, int[] original) {
+        int[] cells = transforms[transform];
+        for (int index = 0; index < cells.length; index++) {
+            original[cells[index]] = inverseLabels[canonical[index]];
+        }
+    }
+}
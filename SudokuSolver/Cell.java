@@ -1,41 +1,133 @@
 package SudokuSolver;
 
 import java.util.Collection;
-import java.util.TreeSet;
 
+/**
+ * This class is a view of one cell of a board. The value and the markup are
+ *   not kept in the cell but in the array of packed cells of its grid (see
+ *   BoardState), so copying or restoring a grid never touches the cells.
+ * A cell created on its own has a board of its own, with only itself in
+ *   it, until it is given to a grid.
+ * The public fields value and markup of the earlier versions are gone, since
+ *   a field cannot be a view of the board: cell.value is read with getValue
+ *   and changed with setValue, and cell.markup is read with getMarkup or
+ *   getMarkupBits and changed with setMarkup, setMarkupBits or
+ *   removeFromMarkup. getMarkup returns a copy, so changing the set it
+ *   returns does not change the cell.
+ * @author morel
+ */
 public class Cell implements Comparable<Cell>{
 
     //Coordinates of the cell
     int row;
     int column;
 
-    //Value of the cell from 1 to 9, 0 if the cell has no value yet
-    public int value;
-
-    //Markups of the cells, which are the possibles values the
-    //  cell can currently have
-    public TreeSet<Integer> markup = new TreeSet();
+    //The packed cells holding the value and the markup of this cell, and the
+    //  index of this cell in them
+    private int[] board;
+    private int index;
 
     public Cell(int row, int column) {
+        this(row, column, 0);
+    }
+
+    public Cell(int row, int column, int value) {
         this.row = row;
         this.column = column;
+        this.board = new int[] {BoardState.pack(value, 0)};
     }
 
-    public Cell(int row, int column, int value) {
+    /**
+     * Creates a cell that is a view of the board of a grid
+     * @param board: the packed cells of the grid
+     * @param index: the index of the cell in the board
+     */
+    Cell(int row, int column, int[] board, int index) {
         this.row = row;
         this.column = column;
-        this.value = value;
+        this.board = board;
+        this.index = index;
+    }
+
+    /**
+     * Moves the value and the markup of the cell to the board of a grid, and
+     *   makes the cell a view of that board
+     * @param board: the packed cells of the grid
+     * @param index: the index of the cell in the board
+     */
+    void attach(int[] board, int index) {
+        board[index] = this.board[this.index];
+        this.board = board;
+        this.index = index;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the value of the cell
+     * @return int: the value, from 1 to the size of the grid, 0 if the cell
+     *    has no value yet
+     */
+    public int getValue() {
+        return BoardState.value(board[index]);
+    }
+
+    /**
+     * Gives a value to the cell, without changing its markup
+     * @param value: the value, 0 to remove the value of the cell
+     */
+    public void setValue(int value) {
+        board[index] = BoardState.pack(value, BoardState.markup(board[index]));
+    }
+
+    /**
+     * Returns a copy of the markup of the cell, which holds the possible
+     *   values the cell can currently have
+     * @return CandidateSet
+     */
+    public CandidateSet getMarkup() {
+        return new CandidateSet(getMarkupBits());
+    }
+
+    /**
+     * Returns the mask of the markup of the cell
+     * @return int: the mask (see CandidateSet)
+     */
+    public int getMarkupBits() {
+        return BoardState.markup(board[index]);
+    }
+
+    /**
+     * Replaces the markup of the cell, without changing its value
+     * @param markup: the numbers of the new markup
+     */
+    public void setMarkup(CandidateSet markup) {
+        setMarkupBits(markup.getBits());
+    }
+
+    /**
+     * Replaces the markup of the cell, without changing its value
+     * @param bits: the mask of the new markup
+     */
+    public void setMarkupBits(int bits) {
+        board[index] = (board[index] & ~BoardState.MARKUP_MASK) | bits;
     }
 
     /**
      * Removes the given numbers from the markup of the cell
      * @param numbers: the numbers to remove
-     * @return boolean: true if a number was removed, false if not 
+     * @return boolean: true if a number was removed, false if not
      */
     public boolean removeFromMarkup(Collection<Integer> numbers) {
         boolean removed = false;
         for (int number : numbers) {
-            if (markup.remove(number)) {
+            if (removeFromMarkup(number)) {
                 removed = true;
             }
         }
@@ -45,39 +137,54 @@ public class Cell implements Comparable<Cell>{
     /**
      * Removes one number from the markup of the cell
      * @param number: the number to be removed
-     * @return boolean: true if the number was removed, false if it was 
+     * @return boolean: true if the number was removed, false if it was
      *    not in the markup
      */
     public boolean removeFromMarkup(int number) {
-        return markup.remove(number);
+        return removeBits(CandidateSet.bit(number));
+    }
+
+    /**
+     * Removes the numbers of the given set from the markup of the cell
+     * @param numbers: the numbers to remove
+     * @return boolean: true if a number was removed, false if not
+     */
+    public boolean removeFromMarkup(CandidateSet numbers) {
+        return removeBits(numbers.getBits());
+    }
+
+    private boolean removeBits(int bits) {
+        int old = board[index];
+        board[index] = old & ~bits;
+        return old != board[index];
     }
-    
+
+    /**
+     * Two cells are equal if they have the same markup
+     */
     @Override
     public boolean equals(Object other) {
-        return compareTo((Cell)other) == 0;
+        return other instanceof Cell && getMarkupBits() == ((Cell) other).getMarkupBits();
     }
 
+    /**
+     * The mask of the markup, which is kept up to date by every change of the
+     *   markup, so cells can be grouped by markup in a hash map
+     */
     @Override
-    public int compareTo(Cell other) {
-        if (convertMarkupToInteger(markup) == convertMarkupToInteger(other.markup)) {
-            return 0;
-        } else {
-            if(convertMarkupToInteger(markup) < convertMarkupToInteger(other.markup)){
-                return -1;
-            } else {
-                return 1;
-            }
-        }
+    public int hashCode() {
+        return getMarkupBits();
     }
-    
-    private int convertMarkupToInteger(TreeSet<Integer> markup) {
-        if(markup == null || markup.size() == 0) {
-            return 0;
-        }
-        int result = 0;
-        for(int i:markup) {
-            result = result * 10 + i;
-        }
-        return result;
+
+    /**
+     * Cells are ordered by their markup, as if the numbers of the markup were
+     *   the digits of an integer ({3} < {1, 2} < {1, 3}). The order is
+     *   computed from the mask of the markup, without going through the
+     *   numbers
+     */
+    @Override
+    public int compareTo(Cell other) {
+        return Long.compare(CandidateSet.orderKey(getMarkupBits()),
+                CandidateSet.orderKey(other.getMarkupBits()));
     }
 }
@@ -15,8 +15,8 @@ public class CellNode implements Comparable<CellNode> {
 
     Cell cell;  //The cell in the node
     int nodesNeeded;    //Number of nodes needed to complete the preemptive set
-    TreeSet<Integer> numbersFound = new TreeSet<>();  //The numbers already found to complete the set
-    TreeSet<Integer> numbersLeft = new TreeSet<>();   //Numbers to be found to complete the set
+    int numbersFound;   //Mask of the numbers already found to complete the set
+    int numbersLeft;    //Mask of the numbers to be found to complete the set
     CellNode parent;
     TreeSet<CellNode> children = new TreeSet<>();
     int depth;  //The number of nodes from the parent to the node, both included
@@ -41,12 +41,7 @@ public class CellNode implements Comparable<CellNode> {
     public boolean addChild(CellNode node) {
         //Only add children with markups that contain at least one of the 
         //  numbers to be found
-        boolean intersect = false;
-        for (int i : node.cell.markup) {
-            if (this.numbersLeft.contains(i)) {
-                intersect = true;
-            }
-        }
+        boolean intersect = (node.cell.getMarkupBits() & this.numbersLeft) != 0;
         if (!intersect) {
             return false;
         }
@@ -94,15 +89,15 @@ public class CellNode implements Comparable<CellNode> {
         //If the node is the root, we need at least, as much nodes as 
         //  the its markup size to complete a preemptive seet
         if (node.parent == null) {
-            node.nodesNeeded = node.cell.markup.size();
+            node.nodesNeeded = CandidateSet.size(node.cell.getMarkupBits());
         } else {
             //If there is no number to be found but the number of nodes needed to 
             //  complete the preemtive set has not been reached, keep the 
             //  number of nodes needed the same and add children later
             if (node.depth < node.parent.nodesNeeded) {
                 node.nodesNeeded = node.parent.nodesNeeded;
-            } else if(node.numbersLeft.isEmpty()) {
-                node.nodesNeeded = node.numbersFound.size();
+            } else if(node.numbersLeft == 0) {
+                node.nodesNeeded = CandidateSet.size(node.numbersFound);
             } else {
                 //If at the current node, there are still numbers to be found, 
                 //  then we will need at least one more node that contains those
@@ -132,25 +127,22 @@ public class CellNode implements Comparable<CellNode> {
      */
     private void updateNumbers(CellNode node) {
         //For the root, all the numbers in its markup are yet to be found
+        int markup = node.cell.getMarkupBits();
         if (node.parent == null) {
-            node.numbersFound = new TreeSet<>();
-            node.numbersLeft = new TreeSet<>(node.cell.markup);
+            node.numbersFound = 0;
+            node.numbersLeft = markup;
         } else {
             //For the other nodes:
             //  The numbers found is the previous numbers found, plus the
             //      numbers found in the current markup
             //  The numbers left are the previous numbers left, minus the
             //      numbers found in the current markup
-            node.numbersFound = new TreeSet<>(node.parent.numbersFound);
-            node.numbersLeft = new TreeSet<>(node.parent.numbersLeft);
-            for (int i : node.cell.markup) {
-                if (node.numbersLeft.contains(i)) {
-                    node.numbersFound.add(i);
-                    node.numbersLeft.remove(i);
-                } else if (!node.numbersFound.contains(i)) {
-                    node.numbersLeft.add(i);
-                }
-            }
+            //  (numbers found and numbers left never share a number, so
+            //      a xor is enough to move the numbers between both masks)
+            node.numbersFound = node.parent.numbersFound
+                    | (markup & node.parent.numbersLeft);
+            node.numbersLeft = (node.parent.numbersLeft ^ markup)
+                    & ~node.parent.numbersFound;
         }
     }
 }
@@ -0,0 +1,301 @@
+package SudokuSolver;
+
+/**
+ * This class solves a grid as an exact cover problem, with Knuth's
+ *   Algorithm X and Dancing Links. Each row of the matrix is a value given
+ *   to a cell, and each column a constraint that must be met exactly once:
+ *   a cell has a value, and a row, a column and a box have each value.
+ * The nodes are not objects: each node is an index in arrays of links
+ *   (left, right, up, down) and of columns, allocated once per geometry. The
+ *   whole matrix is built once, then each solve covers the rows of the
+ *   values of the grid, searches, and uncovers everything, which leaves the
+ *   matrix as it was for the next grid. Nothing is allocated by a solve.
+ * Like the Solver, it must not be used by several threads at once.
+ * @author morel
+ */
+class DancingLinks {
+
+    //Number of constraints met by each row of the matrix
+    private static final int NODES_PER_ROW = 4;
+
+    final Geometry geometry;
+
+    private final int columnCount;
+
+    //Index of the first node of the first row. Node 0 is the root, and the
+    //  nodes 1 to columnCount are the column headers
+    private final int firstRowNode;
+
+    private final int[] left;
+    private final int[] right;
+    private final int[] up;
+    private final int[] down;
+    private final int[] column;
+
+    //Number of rows left in each column
+    private final int[] columnSizes;
+
+    //The row chosen at each search level, as the index of one of its nodes
+    private final int[] chosen;
+
+    //The rows covered for the values of the grid
+    private final int[] given;
+    private int givenCount;
+
+    private int solutionLimit;
+    private int solutionsFound;
+    private int[] solution;
+
+    //Number of rows tried by the search, and of those that were undone
+    long guesses;
+    long backtracks;
+
+    DancingLinks(Geometry geometry) {
+        this.geometry = geometry;
+        int size = geometry.size;
+        int cellCount = geometry.cellCount;
+        columnCount = NODES_PER_ROW * cellCount;
+        firstRowNode = columnCount + 1;
+        int nodeCount = firstRowNode + NODES_PER_ROW * cellCount * size;
+        left = new int[nodeCount];
+        right = new int[nodeCount];
+        up = new int[nodeCount];
+        down = new int[nodeCount];
+        column = new int[nodeCount];
+        columnSizes = new int[columnCount + 1];
+        chosen = new int[cellCount];
+        given = new int[cellCount];
+
+        //The root and the column headers form a circular list
+        for (int header = 0; header <= columnCount; header++) {
+            left[header] = header == 0 ? columnCount : header - 1;
+            right[header] = header == columnCount ? 0 : header + 1;
+            up[header] = header;
+            down[header] = header;
+            column[header] = header;
+        }
+
+        for (int cell = 0; cell < cellCount; cell++) {
+            int row = geometry.row(cell);
+            int col = geometry.column(cell);
+            int box = geometry.unitsOfCell[cell][2] - geometry.boxUnit(0);
+            for (int value = 0; value < size; value++) {
+                int node = rowNode(cell, value + 1);
+                addNode(node, 1 + cell);
+                addNode(node + 1, 1 + cellCount + row * size + value);
+                addNode(node + 2, 1 + 2 * cellCount + col * size + value);
+                addNode(node + 3, 1 + 3 * cellCount + box * size + value);
+                for (int k = 0; k < NODES_PER_ROW; k++) {
+                    left[node + k] = node + (k + NODES_PER_ROW - 1) % NODES_PER_ROW;
+                    right[node + k] = node + (k + 1) % NODES_PER_ROW;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a node at the bottom of a column
+     * @param node: the index of the node
+     * @param header: the index of the column header
+     */
+    private void addNode(int node, int header) {
+        column[node] = header;
+        up[node] = up[header];
+        down[node] = header;
+        down[up[header]] = node;
+        up[header] = node;
+        columnSizes[header]++;
+    }
+
+    /**
+     * Returns the first node of the row of a value given to a cell
+     * @param cell: the index of the cell
+     * @param value: the value, from 1 to size
+     * @return int: the node of the cell constraint of the row
+     */
+    private int rowNode(int cell, int value) {
+        return firstRowNode + NODES_PER_ROW * (cell * geometry.size + value - 1);
+    }
+
+    /**
+     * Finds the solutions of a grid, from the values of its cells. The
+     *   markups are not used
+     * @param grid: the grid, of the geometry of this matrix
+     * @param limit: the search stops once this number of solutions is found
+     * @param firstSolution: gets the first solution found, as a state of the
+     *    grid (see Grid.saveState) whose markups are empty
+     * @return int: the number of solutions found, at most limit
+     */
+    int solve(Grid grid, int limit, int[] firstSolution) {
+        solutionLimit = limit;
+        solutionsFound = 0;
+        solution = firstSolution;
+        guesses = 0;
+        backtracks = 0;
+
+        givenCount = 0;
+        boolean consistent = true;
+        for (int cell = 0; cell < geometry.cellCount && consistent; cell++) {
+            int value = grid.getValue(cell);
+            if (value != 0) {
+                int node = rowNode(cell, value);
+                //The row is gone if another value already meets one of its
+                //  constraints
+                if (isCovered(node)) {
+                    consistent = false;
+                } else {
+                    coverRow(node);
+                    given[givenCount++] = node;
+                }
+            }
+        }
+        if (consistent) {
+            search(0);
+        }
+
+        //Put the matrix back as it was
+        while (givenCount > 0) {
+            uncoverRow(given[--givenCount]);
+        }
+        return solutionsFound;
+    }
+
+    /**
+     * Checks whether one of the columns of a row is already covered
+     * @param node: the first node of the row
+     * @return boolean
+     */
+    private boolean isCovered(int node) {
+        for (int k = 0; k < NODES_PER_ROW; k++) {
+            int header = column[node + k];
+            if (right[left[header]] != header) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Chooses the column with the fewest rows, then tries each of its rows
+     * @param depth: the number of rows chosen so far
+     */
+    private void search(int depth) {
+        if (right[0] == 0) {
+            //All the constraints are met
+            solutionsFound++;
+            if (solutionsFound == 1) {
+                recordSolution(depth);
+            }
+            return;
+        }
+
+        int best = right[0];
+        for (int header = right[best]; header != 0; header = right[header]) {
+            if (columnSizes[header] < columnSizes[best]) {
+                best = header;
+                if (columnSizes[best] <= 1) {
+                    break;
+                }
+            }
+        }
+        if (columnSizes[best] == 0) {
+            return;
+        }
+
+        cover(best);
+        for (int node = down[best]; node != best; node = down[node]) {
+            chosen[depth] = node;
+            guesses++;
+            for (int other = right[node]; other != node; other = right[other]) {
+                cover(column[other]);
+            }
+            search(depth + 1);
+            for (int other = left[node]; other != node; other = left[other]) {
+                uncover(column[other]);
+            }
+            if (solutionsFound >= solutionLimit) {
+                break;
+            }
+            backtracks++;
+        }
+        uncover(best);
+    }
+
+    /**
+     * Copies the values of the grid and of the rows chosen into the solution
+     * @param depth: the number of rows chosen
+     */
+    private void recordSolution(int depth) {
+        for (int k = 0; k < givenCount; k++) {
+            recordRow(given[k]);
+        }
+        for (int k = 0; k < depth; k++) {
+            recordRow(chosen[k]);
+        }
+    }
+
+    private void recordRow(int node) {
+        int row = (node - firstRowNode) / NODES_PER_ROW;
+        solution[row / geometry.size] = BoardState.pack(row % geometry.size + 1, 0);
+    }
+
+    /**
+     * Covers the columns of a row, the row being chosen
+     * @param node: the first node of the row
+     */
+    private void coverRow(int node) {
+        int other = node;
+        do {
+            cover(column[other]);
+            other = right[other];
+        } while (other != node);
+    }
+
+    /**
+     * Uncovers the columns of a row, in the reverse order of coverRow
+     * @param node: the first node of the row
+     */
+    private void uncoverRow(int node) {
+        int other = left[node];
+        while (true) {
+            uncover(column[other]);
+            if (other == node) {
+                break;
+            }
+            other = left[other];
+        }
+    }
+
+    /**
+     * Removes a column from the header list, and its rows from the other
+     *   columns
+     * @param header: the column header
+     */
+    private void cover(int header) {
+        right[left[header]] = right[header];
+        left[right[header]] = left[header];
+        for (int row = down[header]; row != header; row = down[row]) {
+            for (int node = right[row]; node != row; node = right[node]) {
+                down[up[node]] = down[node];
+                up[down[node]] = up[node];
+                columnSizes[column[node]]--;
+            }
+        }
+    }
+
+    /**
+     * Puts back a column removed by cover, links in the reverse order
+     * @param header: the column header
+     */
+    private void uncover(int header) {
+        for (int row = up[header]; row != header; row = up[row]) {
+            for (int node = left[row]; node != row; node = left[node]) {
+                columnSizes[column[node]]++;
+                down[up[node]] = node;
+                up[down[node]] = node;
+            }
+        }
+        right[left[header]] = header;
+        left[right[header]] = header;
+    }
+}
@@ -0,0 +1,132 @@
+package SudokuSolver;
+
+import java.util.ArrayList;
+
+/**
+ * This class runs deduction rules on a grid until none of them can deduce
+ *   anything more. The rules are given from the cheapest to the most
+ *   expensive, and each time a rule changes the grid, the pipeline starts
+ *   again from the cheapest one, so the expensive rules only run when the
+ *   cheap ones are stuck.
+ * A rule can be limited to the first levels of a search: deeper in the
+ *   search tree, there are many more grids to propagate and each one is
+ *   closer to its solution, so a guess is cheaper than the expensive rules.
+ * Some rules keep arrays between runs, so like the Solver, a pipeline must
+ *   not be used by several threads at once.
+ * @author morel
+ */
+public class DeductionPipeline {
+
+    //The levels of the search up to which the standard pipeline runs the
+    //  subsets: below, a guess and the cheaper rules find a contradiction
+    //  sooner than the subsets are searched in all the units
+    public static final int SUBSET_DEPTH = 2;
+
+    private final ArrayList<DeductionRule> rules = new ArrayList<>();
+
+    //The deepest level of the search at which each rule runs
+    private int[] maxDepths = new int[0];
+
+    //Number of times each rule changed the grid
+    private long[] changes = new long[0];
+
+    /**
+     * Creates a pipeline with the standard rules of the Solver, cheapest
+     *   first: hidden singles, pointing / box-line reduction, naked subsets
+     *   and hidden subsets. The subsets only run up to SUBSET_DEPTH. The
+     *   naked singles are left to Grid.markup(), assign() and eliminate(),
+     *   which already give their value to the cells left with one number
+     * @return DeductionPipeline
+     */
+    public static DeductionPipeline standard() {
+        return new DeductionPipeline()
+                .add(new HiddenSingles())
+                .add(new IntersectionRemoval())
+                .add(new NakedSubsets(), SUBSET_DEPTH)
+                .add(new HiddenSubsets(), SUBSET_DEPTH);
+    }
+
+    /**
+     * Adds a rule after the ones already in the pipeline, run at every level
+     *   of the search
+     * @param rule: the rule, more expensive than the others
+     * @return DeductionPipeline: this pipeline
+     */
+    public DeductionPipeline add(DeductionRule rule) {
+        return add(rule, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds a rule after the ones already in the pipeline, run only in the
+     *   first levels of the search
+     * @param rule: the rule, more expensive than the others
+     * @param maxDepth: the deepest level of the search at which the rule
+     *    runs, 0 to only run it before the first guess
+     * @return DeductionPipeline: this pipeline
+     */
+    public DeductionPipeline add(DeductionRule rule, int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("The depth cannot be negative: " + maxDepth);
+        }
+        rules.add(rule);
+        long[] newChanges = new long[rules.size()];
+        System.arraycopy(changes, 0, newChanges, 0, changes.length);
+        changes = newChanges;
+        int[] newMaxDepths = new int[rules.size()];
+        System.arraycopy(maxDepths, 0, newMaxDepths, 0, maxDepths.length);
+        newMaxDepths[rules.size() - 1] = maxDepth;
+        maxDepths = newMaxDepths;
+        return this;
+    }
+
+    public ArrayList<DeductionRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the number of times a rule changed a grid since the pipeline
+     *   was created
+     * @param rule: the position of the rule in the pipeline
+     * @return long
+     */
+    public long getChanges(int rule) {
+        return changes[rule];
+    }
+
+    /**
+     * Runs all the rules until none of them changes the grid
+     * @param grid: the grid, whose markups are up to date
+     * @return boolean: false if a rule found a contradiction
+     */
+    public boolean run(Grid grid) {
+        return run(grid, 0);
+    }
+
+    /**
+     * Runs the rules of a level of the search until none of them changes
+     *   the grid
+     * @param grid: the grid, whose markups are up to date
+     * @param depth: the number of guesses made so far
+     * @return boolean: false if a rule found a contradiction
+     */
+    public boolean run(Grid grid, int depth) {
+        int rule = 0;
+        while (rule < rules.size()) {
+            if (maxDepths[rule] < depth) {
+                rule++;
+                continue;
+            }
+            DeductionRule.Result result = rules.get(rule).apply(grid);
+            if (result == DeductionRule.Result.CONTRADICTION) {
+                return false;
+            }
+            if (result == DeductionRule.Result.CHANGED) {
+                changes[rule]++;
+                rule = 0;
+            } else {
+                rule++;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package SudokuSolver;
+
+/**
+ * This interface defines a deduction rule: a way to remove numbers from the
+ *   markups, or to give values to cells, without guessing. The rules are run
+ *   by a DeductionPipeline, cheapest first.
+ * A rule can expect the markups to be up to date (after Grid.markup()), and
+ *   must keep them so: it removes numbers with Grid.eliminate and gives
+ *   values with Grid.assign, which both update the neighbors.
+ * @author morel
+ */
+public interface DeductionRule {
+
+    /**
+     * The outcome of applying a rule once
+     */
+    enum Result {
+        UNCHANGED,      //Nothing could be deduced
+        CHANGED,        //At least one number was removed or one value given
+        CONTRADICTION   //The grid cannot lead to a solution
+    }
+
+    /**
+     * Applies the rule once to all the units of the grid
+     * @param grid: the grid, whose markups are up to date
+     * @return Result: whether the grid changed, or a contradiction was found
+     */
+    Result apply(Grid grid);
+
+    /**
+     * Returns the name of the rule, to print what it found
+     * @return String
+     */
+    String getName();
+}
@@ -0,0 +1,196 @@
+package SudokuSolver;
+
+/**
+ * This class defines the shape of a board: its size, and for each cell, the
+ *   units (rows, columns and boxes) and the adjacent cells it belongs to.
+ *   Cells are identified by their index, row * size + column, and units by
+ *   their number: rows first, then columns, then boxes.
+ * The tables are computed once per board size and shared by every grid of
+ *   that size. They never change, so they can be read by any number of
+ *   threads, and looping over them does not create any object.
+ * @author morel
+ */
+public final class Geometry {
+
+    //Biggest box size whose values fit in a CandidateSet
+    public static final int MAX_BOX_SIZE = 5;
+
+    //The geometries already computed, indexed by box size
+    private static final Geometry[] geometries = new Geometry[MAX_BOX_SIZE + 1];
+
+    //Width of a box (3 for a 9x9 board)
+    final int boxSize;
+
+    //Width of the board, and number of cells in a unit (9 for a 9x9 board)
+    final int size;
+
+    //Number of cells of the board
+    final int cellCount;
+
+    //Number of units of the board: size rows, size columns and size boxes
+    final int unitCount;
+
+    //Number of adjacent cells of each cell (20 for a 9x9 board)
+    final int peerCount;
+
+    //The indexes of the cells of each unit, in reading order
+    final int[][] units;
+
+    //The indexes of the adjacent cells of each cell: the cells in the same
+    //  row, then the other ones in the same column, then the other ones in
+    //  the same box (same order as Grid.getAdjCells)
+    final int[][] peers;
+
+    //The row, column and box unit of each cell
+    final int[][] unitsOfCell;
+
+    private Geometry(int boxSize) {
+        this.boxSize = boxSize;
+        size = boxSize * boxSize;
+        cellCount = size * size;
+        unitCount = 3 * size;
+        peerCount = 3 * size - 2 * boxSize - 1;
+
+        units = new int[unitCount][size];
+        unitsOfCell = new int[cellCount][3];
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int cell = index(row, column);
+                int box = (row / boxSize) * boxSize + column / boxSize;
+                int positionInBox = (row % boxSize) * boxSize + column % boxSize;
+                units[rowUnit(row)][column] = cell;
+                units[columnUnit(column)][row] = cell;
+                units[boxUnit(box)][positionInBox] = cell;
+                unitsOfCell[cell][0] = rowUnit(row);
+                unitsOfCell[cell][1] = columnUnit(column);
+                unitsOfCell[cell][2] = boxUnit(box);
+            }
+        }
+
+        peers = new int[cellCount][peerCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            int row = row(cell);
+            int column = column(cell);
+            int count = 0;
+            for (int other : units[rowUnit(row)]) {
+                if (other != cell) {
+                    peers[cell][count++] = other;
+                }
+            }
+            for (int other : units[columnUnit(column)]) {
+                if (other != cell) {
+                    peers[cell][count++] = other;
+                }
+            }
+            for (int other : units[unitsOfCell[cell][2]]) {
+                if (row(other) != row && column(other) != column) {
+                    peers[cell][count++] = other;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the geometry of the boards made of boxSize x boxSize boxes
+     * @param boxSize: the width of a box, 3 for a 9x9 board
+     * @return Geometry: the shared geometry
+     */
+    public static synchronized Geometry of(int boxSize) {
+        if (boxSize < 1 || boxSize > MAX_BOX_SIZE) {
+            throw new IllegalArgumentException("Unsupported box size: " + boxSize);
+        }
+        if (geometries[boxSize] == null) {
+            geometries[boxSize] = new Geometry(boxSize);
+        }
+        return geometries[boxSize];
+    }
+
+    /**
+     * Returns the geometry of the boards of the given width
+     * @param size: the width of the board, 9 for a 9x9 board
+     * @return Geometry: the shared geometry
+     * @throws IllegalArgumentException: if the width is not the square of a
+     *    supported box size
+     */
+    public static Geometry ofSize(int size) {
+        int boxSize = (int) Math.round(Math.sqrt(size));
+        if (boxSize * boxSize != size) {
+            throw new IllegalArgumentException("Unsupported board size: " + size);
+        }
+        return of(boxSize);
+    }
+
+    public int getBoxSize() {
+        return boxSize;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public int getUnitCount() {
+        return unitCount;
+    }
+
+    public int getPeerCount() {
+        return peerCount;
+    }
+
+    public int index(int row, int column) {
+        return row * size + column;
+    }
+
+    public int row(int cell) {
+        return cell / size;
+    }
+
+    public int column(int cell) {
+        return cell % size;
+    }
+
+    public int rowUnit(int row) {
+        return row;
+    }
+
+    public int columnUnit(int column) {
+        return size + column;
+    }
+
+    public int boxUnit(int box) {
+        return 2 * size + box;
+    }
+
+    /**
+     * Returns the index of the k-th cell of a unit
+     * @param unit: the unit number
+     * @param k: the position of the cell in the unit, from 0 to size - 1
+     * @return int: the index of the cell
+     */
+    public int unitCell(int unit, int k) {
+        return units[unit][k];
+    }
+
+    /**
+     * Returns the index of the k-th adjacent cell of a cell
+     * @param cell: the index of the cell
+     * @param k: the position of the neighbor, from 0 to getPeerCount() - 1
+     * @return int: the index of the neighbor
+     */
+    public int peer(int cell, int k) {
+        return peers[cell][k];
+    }
+
+    /**
+     * Returns the row, column or box unit of a cell
+     * @param cell: the index of the cell
+     * @param kind: 0 for the row, 1 for the column, 2 for the box
+     * @return int: the unit number
+     */
+    public int unitOf(int cell, int kind) {
+        return unitsOfCell[cell][kind];
+    }
+}
@@ -3,37 +3,231 @@ package SudokuSolver;
 import java.util.ArrayList;
 import java.util.TreeMap;
 
+/**
+ * This class holds a board being solved: the value and the markup of each
+ *   cell, and the ways to update the markups.
+ * Threading model:
+ *   - the Geometry of the grid (its units and adjacent cells) is shared by
+ *     all the grids of the same size and never changes, so any number of
+ *     threads can use grids of the same size at once
+ *   - the methods that change the grid (setValues, markup, assign,
+ *     useAllPreemptiveSets, restoreState, restore, updateNeighborhood...)
+ *     must only be called by one thread at a time, with no other thread
+ *     using the grid meanwhile
+ *   - while nobody changes it, a grid can be queried by several threads at
+ *     once: getValue, getMarkup, getCell, getRow, getColumn, get3x3Grid,
+ *     getAdjCells, getUnitCells, getPreemptiveSet, getAllPreemptiveSets,
+ *     hasContradiction, isSolved, saveState and snapshot keep their work in
+ *     local variables or in arrays of the calling thread. Only the work
+ *     counters (getPeerChecks...) are not exact if the CELL_TREE search is
+ *     queried by several threads at once
+ *   - to hand a board over to another thread, take a snapshot (an immutable
+ *     BoardState) and restore it into a grid of that thread
+ * A Solver, a DeductionPipeline and its rules also keep arrays between
+ *   calls, so each thread uses its own, as BatchSolver and ParallelSolver do.
+ * @author morel
+ */
 public class Grid {
 
     //The grid containing all the sudoku cells
-    public Cell[][] grid = new Cell[9][9];
-    
-    TreeMap<Cell, ArrayList<Coordinates>> cellsMap;
+    public Cell[][] grid;
+
+    /**
+     * The ways markup() can reach its fixpoint
+     */
+    public enum Propagation {
+        FULL_SCAN,  //Scan the whole grid again until nothing changes
+        WORK_QUEUE, //Only visit the neighbors of the cells that got a value
+        UNIT_MASKS  //Remove the values of each unit from all its cells at
+                    //  once, on SIMD lanes if possible (see UnitEliminator)
+    }
+
+    //The propagation used by markup()
+    public Propagation propagation = Propagation.WORK_QUEUE;
+
+    /**
+     * The ways preemptive sets can be searched
+     */
+    public enum PreemptiveSearch {
+        CELL_TREE,  //Build a tree of CellNodes for each markup of the unit
+        SUBSET_MASK //Enumerate the small subsets of the unit with masks
+    }
+
+    //The search used by getPreemptiveSet and useAllPreemptiveSets. The tree
+    //  is only kept to compare results with the previous versions
+    public PreemptiveSearch preemptiveSearch = PreemptiveSearch.SUBSET_MASK;
+
+    //Finds the preemptive sets when using SUBSET_MASK. The finder keeps the
+    //  sets it found, so each thread querying a grid has its own
+    private static final ThreadLocal<PreemptiveSetFinder> finders =
+            ThreadLocal.withInitial(PreemptiveSetFinder::new);
+
+    //Uses the preemptive sets of all the units when using SUBSET_MASK
+    private final NakedSubsets nakedSubsets = new NakedSubsets();
+
+    //The rows, columns, boxes and adjacent cells of the board, shared by
+    //  all the grids of the same size
+    final Geometry geometry;
+
+    //The cells of the grid, indexed by row * size + column. They are views
+    //  of the board
+    Cell[] cells;
 
+    //The value and the markup of each cell, packed as in BoardState. This is
+    //  the state of the grid: saving or restoring it is one array copy
+    int[] board;
+
+    //Cells whose value still has to be removed from their neighbors' markups
+    private int[] queue;
+
+    //Runs the UNIT_MASKS propagation, created when first used
+    private UnitEliminator unitEliminator;
+
+    //Number of times a markup was checked against an adjacent cell, used to
+    //  measure the work done by the propagation
+    long peerChecks;
+
+    //Number of values removed from markups, by markup(), assign() and the
+    //  preemptive sets
+    long candidatesRemoved;
+
+    //Number of scans of the grid by markup()
+    long markupPasses;
+
+    //Number of preemptive sets found in the rows, columns and 3x3 grids
+    final long[] preemptiveSets = new long[3];
+
+    //Number of nodes built by the CELL_TREE search
+    long cellNodesCreated;
+
+    //Size of the arrays used by saveState and restoreState for a 9x9 grid:
+    //  one packed cell per cell. See getStateSize for other sizes
+    public static final int STATE_SIZE = 81;
+
+    /**
+     * Creates a grid from its cells
+     * @param cell: the cells, size x size where size is 4, 9, 16 or 25
+     */
     public Grid(Cell[][] cell) {
+        geometry = Geometry.ofSize(cell.length);
+        allocate();
         for (int i = 0; i < cell.length; i++) {
             for (int j = 0; j < cell.length; j++) {
                 grid[i][j] = cell[i][j];
+                cells[geometry.index(i, j)] = cell[i][j];
+                cell[i][j].attach(board, geometry.index(i, j));
             }
         }
         initiateMarkups();
     }
 
     /**
-     * Adds numbers from 1 to 9 to the markups
+     * Creates a 9x9 grid whose cells are all empty, to be filled with
+     *   setValues
      */
-    private void initiateMarkups() {
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[i].length; j++) {
-                grid[i][j].markup.clear();
-                //Only add 1 to 9 to unsolved cells
-                if (grid[i][j].value == 0) {
-                    for (int k = 1; k <= 9; k++) {
-                        grid[i][j].markup.add(k);
-                    }
-                }
+    public Grid() {
+        this(Geometry.of(3));
+    }
+
+    /**
+     * Creates a grid whose cells are all empty, to be filled with setValues
+     * @param geometry: the shape of the board
+     */
+    public Grid(Geometry geometry) {
+        this.geometry = geometry;
+        allocate();
+        for (int i = 0; i < geometry.size; i++) {
+            for (int j = 0; j < geometry.size; j++) {
+                grid[i][j] = new Cell(i, j, board, geometry.index(i, j));
+                cells[geometry.index(i, j)] = grid[i][j];
             }
         }
+        initiateMarkups();
+    }
+
+    private void allocate() {
+        grid = new Cell[geometry.size][geometry.size];
+        cells = new Cell[geometry.cellCount];
+        board = new int[geometry.cellCount];
+        queue = new int[geometry.cellCount];
+    }
+
+    /**
+     * Gives new values to all the cells and initiates the markups again, so
+     *   that a grid can be reused for another puzzle
+     * @param values: the value of each cell, row after row, 0 if empty
+     */
+    public void setValues(int[] values) {
+        for (int index = 0; index < geometry.cellCount; index++) {
+            board[index] = BoardState.pack(values[index], 0);
+        }
+        initiateMarkups();
+    }
+
+    /**
+     * Returns the shape of the grid, whose tables give the cells of each unit
+     *   and the adjacent cells of each cell as indexes
+     * @return Geometry
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Returns the size of the arrays used by saveState and restoreState
+     * @return int: one packed cell per cell
+     */
+    public int getStateSize() {
+        return geometry.cellCount;
+    }
+
+    /**
+     * Returns a cell from its index, to loop over the tables of the geometry
+     *   without building lists
+     * @param index: row * size + column
+     * @return Cell
+     */
+    public Cell getCell(int index) {
+        return cells[index];
+    }
+
+    /**
+     * Returns the value of a cell from its index
+     * @param index: row * size + column
+     * @return int: the value, 0 if the cell has none
+     */
+    public int getValue(int index) {
+        return BoardState.value(board[index]);
+    }
+
+    /**
+     * Returns the markup of a cell from its index
+     * @param index: row * size + column
+     * @return int: the mask of the markup (see CandidateSet)
+     */
+    public int getMarkup(int index) {
+        return BoardState.markup(board[index]);
+    }
+
+    /**
+     * Returns the number of times a markup was checked against an adjacent
+     *   cell since the grid was created
+     * @return long
+     */
+    public long getPeerChecks() {
+        return peerChecks;
+    }
+
+    /**
+     * Adds numbers from 1 to size (9 for a 9x9 grid) to the markups
+     */
+    private void initiateMarkups() {
+        int fullMask = CandidateSet.fullMask(geometry.size);
+        for (int index = 0; index < geometry.cellCount; index++) {
+            int value = BoardState.value(board[index]);
+            //Only add 1 to size to unsolved cells
+            board[index] = value == 0 ? fullMask : BoardState.pack(value, 0);
+        }
     }
 
     /**
@@ -57,42 +251,16 @@ public class Grid {
      * @return ArrayList<Cell>: the list of adjacent cells
      */
     public ArrayList<Cell> getAdjCells(Cell cell, boolean included) {
-        //Each cell contains 20 adjacent cells
-        ArrayList<Cell> adjCells = new ArrayList(20);
-
-        //Adding the cells in the same row
-        for (int i = 0; i < 9; i++) {
-            //If the cell has to be included, add it directly
-            //If not, only add cells that are in a different column
-            if (included || (!included && i != cell.column)) {
-                adjCells.add(grid[cell.row][i]);
-            }
-        }
-
-        //Adding the cells in the same column
-        for (int j = 0; j < 9; j++) {
-            //No need to add the given cell again, just add the ones
-            //  that are in a different row
-            if (j != cell.row) {
-                adjCells.add(grid[j][cell.column]);
-            }
-        }
-
-        //Borders of the 3x3 grid the cell is in
-        int rowStart = cell.row - (cell.row % 3);
-        int columnStart = cell.column - (cell.column % 3);
-
-        //Adding the cells in the same 3x3 grid, excluding the
-        //  ones counted in the row adding and column adding
-        for (int i = rowStart; i < rowStart + 3; i++) {
-            for (int j = columnStart; j < columnStart + 3; j++) {
-                //Since the ones on the same row and one the same column
-                //  have been added already, only add the ones in different
-                //  rows and columns
-                if (i != cell.row && j != cell.column) {
-                    adjCells.add(grid[i][j]);
-                }
+        int[] peers = geometry.peers[geometry.index(cell.row, cell.column)];
+        ArrayList<Cell> adjCells = new ArrayList<>(peers.length + 1);
+
+        for (int k = 0; k < peers.length; k++) {
+            //The peers start with the rest of the row, so the cell itself
+            //  goes at the position of its column
+            if (included && k == cell.column) {
+                adjCells.add(grid[cell.row][cell.column]);
             }
+            adjCells.add(cells[peers[k]]);
         }
 
         return adjCells;
@@ -118,23 +286,8 @@ public class Grid {
      * @return ArrayList<Cell>: the list of cells in the 3x3 grid
      */
     public ArrayList<Cell> get3x3Grid(Cell cell, boolean included) {
-        ArrayList<Cell> _3x3Grid = new ArrayList<>();
-
-        //Borders of the 3x3 grid the cell is in
-        int rowStart = cell.row - (cell.row % 3);
-        int columnStart = cell.column - (cell.column % 3);
-
-        //Adding the cells in the same 3x3 grid, excluding the
-        //  ones counted in the row adding and column adding
-        for (int i = rowStart; i < rowStart + 3; i++) {
-            for (int j = columnStart; j < columnStart + 3; j++) {
-                if (included || (!included && (i != cell.row || j != cell.column))) {
-                    _3x3Grid.add(grid[i][j]);
-                }
-            }
-        }
-
-        return _3x3Grid;
+        int index = geometry.index(cell.row, cell.column);
+        return getUnitCells(geometry.unitsOfCell[index][2], index, included);
     }
 
     /**
@@ -156,15 +309,8 @@ public class Grid {
      * @return ArrayList<Cell>: the list of cells in the same row
      */
     public ArrayList<Cell> getRow(Cell cell, boolean included) {
-        ArrayList<Cell> row = new ArrayList<>();
-
-        for (int j = 0; j < 9; j++) {
-            if (included || (!included && j != cell.column)) {
-                row.add(grid[cell.row][j]);
-            }
-        }
-
-        return row;
+        int index = geometry.index(cell.row, cell.column);
+        return getUnitCells(geometry.unitsOfCell[index][0], index, included);
     }
 
     /**
@@ -186,15 +332,35 @@ public class Grid {
      * @return ArrayList<Cell>: the list of cells in the column
      */
     public ArrayList<Cell> getColumn(Cell cell, boolean included) {
-        ArrayList<Cell> column = new ArrayList<>();
+        int index = geometry.index(cell.row, cell.column);
+        return getUnitCells(geometry.unitsOfCell[index][1], index, included);
+    }
+
+    /**
+     * Returns the cells of a unit (row, column or 3x3 grid)
+     * @param unit: the unit number, as given by the geometry
+     * @return ArrayList<Cell>: the list of cells in the unit
+     */
+    public ArrayList<Cell> getUnitCells(int unit) {
+        return getUnitCells(unit, -1, true);
+    }
 
-        for (int i = 0; i < 9; i++) {
-            if (included || (!included && i != cell.row)) {
-                column.add(grid[i][cell.column]);
+    /**
+     * Copies the cells of a unit into a list
+     * @param unit: the unit number
+     * @param index: the index of a cell of the unit
+     * @param included: whether or not that cell should be included in the list
+     * @return ArrayList<Cell>: the list of cells in the unit
+     */
+    private ArrayList<Cell> getUnitCells(int unit, int index, boolean included) {
+        int[] unitCells = geometry.units[unit];
+        ArrayList<Cell> result = new ArrayList<>(unitCells.length);
+        for (int other : unitCells) {
+            if (included || other != index) {
+                result.add(cells[other]);
             }
         }
-
-        return column;
+        return result;
     }
 
     /**
@@ -204,6 +370,21 @@ public class Grid {
      * @return true if any value was removed from a markup, false if nothing changed
      */
     public boolean markup() {
+        if (propagation == Propagation.FULL_SCAN) {
+            return markupFullScan();
+        }
+        if (propagation == Propagation.UNIT_MASKS) {
+            return markupWithUnitMasks();
+        }
+        return markupWithQueue();
+    }
+
+    /**
+     * Scans every cell of the grid and removes the values of its adjacent
+     *   cells from its markup, until a whole scan changes nothing
+     * @return true if any value was removed from a markup, false if nothing changed
+     */
+    private boolean markupFullScan() {
         //Check if overrall,at least one of the grid markups changed
         boolean changed = false;
 
@@ -214,37 +395,330 @@ public class Grid {
         //Keep scanning the grid and update markups, until no change is made
         while (inAction) {
             inAction = false;
-            for (Cell[] row : grid) {
-                for (Cell cell : row) {
-                    for (Cell adjCell : getAdjCells(cell, false)) {
-                        if (cell.markup.remove(adjCell.value)) {
-                            inAction = true;
-                            changed = true;
-                        }
-                    }
-                    //If there is only one number in the markup, that is the only
-                    //  possible value of the cell
-                    if (cell.markup.size() == 1) {
-                        cell.value = cell.markup.first();
-                        cell.markup.clear();
+            markupPasses++;
+            for (int index = 0; index < geometry.cellCount; index++) {
+                for (int peer : geometry.peers[index]) {
+                    peerChecks++;
+                    int valueBit = CandidateSet.bit(BoardState.value(board[peer]));
+                    if ((board[index] & valueBit) != 0) {
+                        board[index] &= ~valueBit;
+                        candidatesRemoved++;
+                        inAction = true;
+                        changed = true;
                     }
                 }
+                //If there is only one number in the markup, that is the only
+                //  possible value of the cell
+                int markup = BoardState.markup(board[index]);
+                if (CandidateSet.size(markup) == 1) {
+                    board[index] = BoardState.pack(CandidateSet.first(markup), 0);
+                }
             }
         }
         return changed;
     }
+
+    /**
+     * Removes the value of each solved cell from the markups of its 20
+     *   neighbors only. When a neighbor is left with one possible value, it
+     *   gets that value and is queued in turn. Reaches the same fixpoint as
+     *   markupFullScan() for any grid without contradiction, while each
+     *   solved cell is only visited once
+     * @return true if any value was removed from a markup, false if nothing changed
+     */
+    private boolean markupWithQueue() {
+        long removedBefore = candidatesRemoved;
+        int tail = 0;
+        markupPasses++;
+
+        //Every solved cell starts in the queue, along with the cells that
+        //  only have one possible value left. A cell can only be queued
+        //  once, when it gets its value, so the queue never overflows
+        for (int index = 0; index < geometry.cellCount; index++) {
+            int cell = board[index];
+            //The packed cell of an unsolved cell is its markup
+            if (BoardState.value(cell) == 0 && CandidateSet.size(cell) == 1) {
+                board[index] = BoardState.pack(CandidateSet.first(cell), 0);
+            }
+            if (BoardState.value(board[index]) != 0) {
+                queue[tail++] = index;
+            }
+        }
+
+        propagate(tail);
+        return candidatesRemoved != removedBefore;
+    }
+
+    /**
+     * Removes the values of each row, column and box from the markups of all
+     *   its cells at once, until a pass changes nothing. Reaches the same
+     *   fixpoint as markupWithQueue(), but scans the whole board at each pass
+     *   so that the scans can run on SIMD lanes
+     * @return true if any value was removed from a markup, false if nothing changed
+     */
+    private boolean markupWithUnitMasks() {
+        if (unitEliminator == null) {
+            unitEliminator = UnitEliminator.create(geometry);
+        }
+        long removedBefore = unitEliminator.getCandidatesRemoved();
+        markupPasses += unitEliminator.eliminate(board);
+        long removed = unitEliminator.getCandidatesRemoved() - removedBefore;
+        candidatesRemoved += removed;
+        return removed != 0;
+    }
+
+    /**
+     * Gives a value to an unsolved cell and removes it from the markups of
+     *   its neighbors, and so on for the neighbors that are left with only
+     *   one possible value. The other cells of the grid are not visited, so
+     *   the markups must already be up to date (after markup() for example).
+     *   With the FULL_SCAN propagation, the whole grid is scanned again
+     *   instead. UNIT_MASKS uses the queue too, as one value only changes
+     *   its neighbors
+     * @param row: the row of the cell
+     * @param column: the column of the cell
+     * @param value: the value to give to the cell
+     * @return boolean: false if the value leads to a contradiction, in which
+     *    case the grid is left partially updated
+     */
+    public boolean assign(int row, int column, int value) {
+        return assign(geometry.index(row, column), value);
+    }
+
+    /**
+     * Gives a value to an unsolved cell, as assign(row, column, value)
+     * @param index: the index of the cell
+     * @param value: the value to give to the cell
+     * @return boolean: false if the value leads to a contradiction
+     */
+    boolean assign(int index, int value) {
+        board[index] = BoardState.pack(value, 0);
+        if (propagation == Propagation.FULL_SCAN) {
+            markupFullScan();
+            return !hasContradiction();
+        }
+        queue[0] = index;
+        return propagate(1);
+    }
+
+    /**
+     * Removes the value of every queued cell from the markups of its
+     *   neighbors, queuing the neighbors that get a value in turn
+     * @param tail: the number of cells already in the queue
+     * @return boolean: false if a contradiction was found (a cell with no
+     *    possible value, or two neighbors with the same value)
+     */
+    private boolean propagate(int tail) {
+        int head = 0;
+        while (head < tail) {
+            int index = queue[head++];
+            int value = BoardState.value(board[index]);
+            int valueBit = CandidateSet.bit(value);
+            for (int peer : geometry.peers[index]) {
+                int adjCell = board[peer];
+                peerChecks++;
+                if ((adjCell & valueBit) != 0) {
+                    candidatesRemoved++;
+                    int markup = BoardState.markup(adjCell & ~valueBit);
+                    //If there is only one number in the markup, that is the
+                    //  only possible value of the cell
+                    if (CandidateSet.size(markup) == 1) {
+                        board[peer] = BoardState.pack(CandidateSet.first(markup), 0);
+                        queue[tail++] = peer;
+                    } else {
+                        board[peer] = adjCell & ~valueBit;
+                        if (markup == 0) {
+                            return false;
+                        }
+                    }
+                } else if (BoardState.value(adjCell) == value) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
     
-    public void useAllPreemptiveSets() {
+    /**
+     * Removes numbers from the markup of an unsolved cell. If the cell is left
+     *   with only one possible value, it gets that value as with assign(), so
+     *   the markups stay up to date
+     * @param index: the index of the cell
+     * @param numbers: the mask of the numbers to remove
+     * @return boolean: false if it leads to a contradiction
+     */
+    boolean eliminate(int index, int numbers) {
+        int removed = board[index] & numbers & BoardState.MARKUP_MASK;
+        if (removed == 0) {
+            return true;
+        }
+        board[index] &= ~removed;
+        candidatesRemoved += CandidateSet.size(removed);
+        int markup = BoardState.markup(board[index]);
+        if (markup == 0) {
+            return false;
+        }
+        if (CandidateSet.size(markup) == 1) {
+            return assign(index, CandidateSet.first(markup));
+        }
+        return true;
+    }
+
+    /**
+     * Finds where each value is possible in a unit
+     * @param unit: the unit number, as given by the geometry
+     * @param positions: gets, for each value, the mask of the positions in
+     *    the unit of the unsolved cells where it is possible
+     * @return int: the mask of the values of the solved cells of the unit
+     */
+    int getDigitPositions(int unit, int[] positions) {
+        int[] unitCells = geometry.units[unit];
+        for (int value = 0; value <= geometry.size; value++) {
+            positions[value] = 0;
+        }
+        int placed = 0;
+        for (int position = 0; position < unitCells.length; position++) {
+            int cell = board[unitCells[position]];
+            if (BoardState.value(cell) != 0) {
+                placed |= CandidateSet.bit(BoardState.value(cell));
+            } else {
+                int markup = BoardState.markup(cell);
+                for (int value = CandidateSet.first(markup); value != 0;
+                        value = CandidateSet.next(markup, value)) {
+                    positions[value] |= 1 << position;
+                }
+            }
+        }
+        return placed;
+    }
+
+    /**
+     * Checks whether the grid can no longer lead to a solution: an unsolved
+     *   cell has no possible value left, or two cells of the same row, column
+     *   or 3x3 grid have the same value
+     * @return boolean: true if the grid is in a contradictory state
+     */
+    public boolean hasContradiction() {
+        for (int[] unit : geometry.units) {
+            //Values already seen in the unit
+            int values = 0;
+            for (int index : unit) {
+                int cell = board[index];
+                if (BoardState.value(cell) == 0) {
+                    if (BoardState.markup(cell) == 0) {
+                        return true;
+                    }
+                } else {
+                    int valueBit = CandidateSet.bit(BoardState.value(cell));
+                    if ((values & valueBit) != 0) {
+                        return true;
+                    }
+                    values |= valueBit;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether all the cells of the grid have a value
+     * @return boolean
+     */
+    public boolean isSolved() {
+        for (int cell : board) {
+            if (BoardState.value(cell) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the values and markups of all the cells into the given array, so
+     *   that they can be restored later without copying the cells themselves.
+     *   The array gets the packed cells of the board, one int per cell
+     * @param state: an array of at least getStateSize() elements
+     */
+    public void saveState(int[] state) {
+        System.arraycopy(board, 0, state, 0, geometry.cellCount);
+    }
+
+    /**
+     * Puts back the values and markups saved by saveState
+     * @param state: the array given to saveState
+     */
+    public void restoreState(int[] state) {
+        System.arraycopy(state, 0, board, 0, geometry.cellCount);
+    }
+
+    /**
+     * Takes an immutable snapshot of the values and markups of the grid. It
+     *   costs one array of getStateSize() ints, and can be kept, shared
+     *   between threads or given back to restore
+     * @return BoardState
+     */
+    public BoardState snapshot() {
+        return new BoardState(geometry, board.clone());
+    }
+
+    /**
+     * Puts back the values and markups of a snapshot, without allocating
+     * @param state: a snapshot of a grid of the same size
+     */
+    public void restore(BoardState state) {
+        if (state.getGeometry() != geometry) {
+            throw new IllegalArgumentException("The snapshot is not of a "
+                    + geometry.size + "x" + geometry.size + " grid");
+        }
+        state.copyTo(board);
+    }
+
+    /**
+     * Finds the preemptive sets of every unit, removes their numbers from the
+     *   other cells of the unit, and updates the markups, until no more
+     *   numbers can be removed. The markups must be up to date.
+     *   With the CELL_TREE search, only the rows are used.
+     *   A contradiction stops the search, and leaves the grid in a state
+     *   where hasContradiction() returns true
+     * @return boolean: true if any number was removed from a markup
+     */
+    public boolean useAllPreemptiveSets() {
+        if (preemptiveSearch == PreemptiveSearch.CELL_TREE) {
+            return useAllPreemptiveSetsFromTree();
+        }
+
+        //Also counts the numbers removed before a contradiction
+        long removedBefore = candidatesRemoved;
+        while (nakedSubsets.apply(this) == DeductionRule.Result.CHANGED) {
+            //Apply the sets again until none removes anything
+        }
+        return candidatesRemoved != removedBefore;
+    }
+
+    /**
+     * Uses the preemptive sets of the rows found by the CELL_TREE search
+     * @return boolean: true if any markup changed
+     */
+    private boolean useAllPreemptiveSetsFromTree() {
+        boolean changed = false;
+        //The cells of the unit grouped by markup, filled again by each search
+        TreeMap<Cell, ArrayList<Coordinates>> cellsMap = new TreeMap<>();
+
         //Rows
-        for(int i = 0; i < 9; i++) {
-            ArrayList<Cell> currentRow = this.getRow(i, 0, true);
-            ArrayList<Cell> preemptiveSet = this.getPreemptiveSet(currentRow);
+        for(int i = 0; i < geometry.size; i++) {
+            int unit = geometry.rowUnit(i);
+            int[] unitCells = geometry.units[unit];
+            ArrayList<Cell> preemptiveSet = getPreemptiveSetFromTree(unitCells, cellsMap);
+            if (preemptiveSet == null) {
+                continue;
+            }
+            preemptiveSets[SolverStats.ROW]++;
             while(!cellsMap.isEmpty() && !preemptiveSet.isEmpty()) {
-                this.updateNeighborhood(currentRow, preemptiveSet, cellsMap);
-                currentRow = this.getRow(i, 0, true);
-                this.getPreemptiveSet(currentRow);
+                changed |= this.updateNeighborhood(getUnitCells(unit), preemptiveSet, cellsMap);
+                getPreemptiveSetFromTree(unitCells, cellsMap);
             }
         }
+        return changed;
     }
 
     /**
@@ -253,17 +727,92 @@ public class Grid {
      * @return a preemptive set of the neighborhood, or null if there isn't any
      */
     public ArrayList<Cell> getPreemptiveSet(ArrayList<Cell> cellsList) {
+        int[] unitCells = new int[cellsList.size()];
+        for (int i = 0; i < unitCells.length; i++) {
+            unitCells[i] = geometry.index(cellsList.get(i).row, cellsList.get(i).column);
+        }
+        return getPreemptiveSet(unitCells);
+    }
+
+    /**
+     * Finds a preemptiveSet in a unit (row, column or 3x3 grid)
+     * @param unit: the unit number, as given by the geometry
+     * @return a preemptive set of the unit, or null if there isn't any
+     */
+    public ArrayList<Cell> getPreemptiveSet(int unit) {
+        return getPreemptiveSet(geometry.units[unit]);
+    }
+
+    /**
+     * Finds all the preemptive sets of a unit (naked pairs, triples and quads)
+     * @param unit: the unit number, as given by the geometry
+     * @return ArrayList<ArrayList<Cell>>: the preemptive sets, smallest first
+     */
+    public ArrayList<ArrayList<Cell>> getAllPreemptiveSets(int unit) {
+        int[] unitCells = geometry.units[unit];
+        PreemptiveSetFinder finder = finders.get();
+        int setsFound = finder.find(board, unitCells, false);
+        ArrayList<ArrayList<Cell>> result = new ArrayList<>(setsFound);
+        for (int k = 0; k < setsFound; k++) {
+            result.add(getSetCells(unitCells, finder.getSet(k)));
+        }
+        return result;
+    }
+
+    /**
+     * Finds a preemptiveSet among the given cells
+     * @param unitCells: the indexes of the cells
+     * @return a preemptive set of the cells, or null if there isn't any
+     */
+    private ArrayList<Cell> getPreemptiveSet(int[] unitCells) {
+        if (preemptiveSearch == PreemptiveSearch.CELL_TREE) {
+            return getPreemptiveSetFromTree(unitCells, new TreeMap<>());
+        }
+        PreemptiveSetFinder finder = finders.get();
+        if (finder.find(board, unitCells, true) == 0) {
+            return null;
+        }
+        return getSetCells(unitCells, finder.getSet(0));
+    }
+
+    /**
+     * Returns the cells of a set found by the finder
+     * @param unitCells: the indexes of the cells of the unit
+     * @param set: the mask of the positions of the cells in the unit
+     * @return ArrayList<Cell>: the cells of the set
+     */
+    private ArrayList<Cell> getSetCells(int[] unitCells, int set) {
+        ArrayList<Cell> result = new ArrayList<>(CandidateSet.size(set));
+        for (int position = 0; position < unitCells.length; position++) {
+            if ((set & (1 << position)) != 0) {
+                result.add(cells[unitCells[position]]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds a preemptiveSet among the given cells by building a tree of
+     *   CellNodes for each distinct markup
+     * @param unitCells: the indexes of the cells
+     * @param cellsMap: gets the unsolved cells grouped by markup, for
+     *    updateNeighborhood. Its previous content is removed
+     * @return a preemptive set of the cells, or null if there isn't any
+     */
+    private ArrayList<Cell> getPreemptiveSetFromTree(int[] unitCells,
+            TreeMap<Cell, ArrayList<Coordinates>> cellsMap) {
         int unsolvedCells = 0;
         //Will contain the result
         ArrayList<Cell> preemptiveSet = new ArrayList<>();
 
         //All the cells in the neighborhood will be copied in a sorted map, to
         //  organize them and deal with markup repetitions
-        cellsMap = new TreeMap();
+        cellsMap.clear();
 
         //Putting all the cells in the map
-        for (Cell cell : cellsList) {
-            if (cell.value == 0) {
+        for (int index : unitCells) {
+            Cell cell = cells[index];
+            if (cell.getValue() == 0) {
                 unsolvedCells++;
                 if (!cellsMap.containsKey(cell)) {
                     cellsMap.put(cell, new ArrayList<>());
@@ -278,8 +827,8 @@ public class Grid {
 
             //If the markup size, and the number of cells having that markup 
             //  size are the same, then they form a trivial preemptive set
-            if (cell.markup.size() == similarCells.size()
-                    && similarCells.size() < (9 - cellsList.size())) {
+            if (CandidateSet.size(cell.getMarkupBits()) == similarCells.size()
+                    && similarCells.size() < (geometry.size - unitCells.length)) {
                 //Add those cells to the preemptive set
                 for (int i = 0; i < similarCells.size(); i++) {
                     int row = similarCells.get(i).row;
@@ -295,6 +844,7 @@ public class Grid {
             }
 
             CellNode root = new CellNode(cell);
+            cellNodesCreated++;
             buildPreemptiveTree(root, cellsMap);
             ArrayList<CellNode> preemptiveLeaves = new ArrayList<>();
             findPreemptiveLeaves(root, preemptiveLeaves);
@@ -314,6 +864,7 @@ public class Grid {
         for (Cell child : cellsMap.keySet()) {
             if (child.compareTo(node.cell) > 0) {
                 CellNode childNode = new CellNode(child);
+                cellNodesCreated++;
                 if (node.addChild(childNode)) {
                     buildPreemptiveTree(childNode, cellsMap);
                 }
@@ -324,6 +875,7 @@ public class Grid {
         int currentIndex = currentList.indexOf(new Coordinates(node.cell.row, node.cell.column));
         if (size > 1 && currentIndex < (size - 1)) {
             CellNode childNode = new CellNode(grid[node.cell.row][node.cell.column]);
+            cellNodesCreated++;
             if (node.addChild(childNode)) {
                 buildPreemptiveTree(childNode, cellsMap);
             }
@@ -343,7 +895,7 @@ public class Grid {
     private void findPreemptiveLeaves(CellNode node,
             ArrayList<CellNode> preemptiveLeaves) {
         if (node.isLeaf()) {
-            if (node.depth == node.nodesNeeded && node.numbersLeft.isEmpty()) {
+            if (node.depth == node.nodesNeeded && node.numbersLeft == 0) {
                 preemptiveLeaves.add(node);
             }
         } else {
@@ -360,10 +912,13 @@ public class Grid {
      * @param neighborhood: the neighborhood to update
      * @param preemptiveSet: the preemptive set that will affect the neighborhood
      * @param cellsMap: the maps that organizes the cells of the neighborhood
+     * @return boolean: true if a markup of the neighborhood changed
      */
-    public void updateNeighborhood(ArrayList<Cell> neighborhood,
+    public boolean updateNeighborhood(ArrayList<Cell> neighborhood,
             ArrayList<Cell> preemptiveSet,
             TreeMap<Cell, ArrayList<Coordinates>> cellsMap) {
+        boolean changed = false;
+
         //Checks if there are still some cells being removed from the map
         boolean inAction = true;
 
@@ -375,19 +930,21 @@ public class Grid {
                 //  the cells in the neighborhood
                 for (Cell neighbor : neighborhood) {
                     if (!preemptiveSet.contains(cell)) {
-                        for (int i : cell.markup) {
-                            neighbor.markup.remove(i);
-                        }
+                        changed |= neighbor.removeFromMarkup(cell.getMarkup());
                     }
                     //Update the value of the cell
-                    if (neighbor.markup.size() == 1) {
-                        neighbor.value = neighbor.markup.pollFirst();
+                    int markup = neighbor.getMarkupBits();
+                    if (CandidateSet.size(markup) == 1) {
+                        neighbor.setValue(CandidateSet.first(markup));
+                        neighbor.setMarkupBits(0);
+                        changed = true;
                     }
                 }
             }
         }
         
         cellsMap.clear();
+        return changed;
     }
 
     /**
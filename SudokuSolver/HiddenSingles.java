@@ -0,0 +1,61 @@
+package SudokuSolver;
+
+/**
+ * This rule gives a value to a cell when it is the only cell of a unit where
+ *   that value is possible. A value that is neither in the unit nor possible
+ *   in any of its cells is a contradiction.
+ * The values possible in exactly one cell are found for all the values at
+ *   once, by adding up the markups of the unit as masks: the values seen
+ *   once, and the values seen at least twice. The cell of a value is only
+ *   looked for when it is a hidden single.
+ * @author morel
+ */
+public class HiddenSingles implements DeductionRule {
+
+    @Override
+    public Result apply(Grid grid) {
+        Geometry geometry = grid.geometry;
+        int allValues = CandidateSet.fullMask(geometry.size);
+        Result result = Result.UNCHANGED;
+        for (int[] unitCells : geometry.units) {
+            int placed = 0;
+            int once = 0;
+            int twice = 0;
+            for (int index : unitCells) {
+                int value = grid.getValue(index);
+                if (value != 0) {
+                    placed |= CandidateSet.bit(value);
+                } else {
+                    int markup = grid.getMarkup(index);
+                    twice |= once & markup;
+                    once |= markup;
+                }
+            }
+            if ((placed | once) != allValues) {
+                return Result.CONTRADICTION;
+            }
+            int singles = once & ~twice & ~placed;
+            for (int value = CandidateSet.first(singles); value != 0;
+                    value = CandidateSet.next(singles, value)) {
+                for (int index : unitCells) {
+                    //An earlier assignment of this pass may have changed the
+                    //  unit, the next pass looks at it again
+                    if (grid.getValue(index) == 0
+                            && CandidateSet.contains(grid.getMarkup(index), value)) {
+                        if (!grid.assign(index, value)) {
+                            return Result.CONTRADICTION;
+                        }
+                        result = Result.CHANGED;
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "hidden single";
+    }
+}
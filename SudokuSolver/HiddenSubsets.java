@@ -0,0 +1,106 @@
+package SudokuSolver;
+
+/**
+ * This rule finds the hidden sets of each unit (hidden pairs, triples and
+ *   quads): k numbers that are only possible in k cells. Those cells cannot
+ *   take any other number, so the other numbers are removed from them.
+ * The sets are searched like the preemptive sets, with the mask of the
+ *   positions where each number is possible instead of the markup of each
+ *   cell.
+ * In a unit of n unsolved cells, the other n - k cells of a hidden set of k
+ *   numbers form a preemptive set, which NakedSubsets finds when it has at
+ *   most MAX_SET_SIZE cells. So only the hidden sets whose complement is
+ *   bigger are searched, which skips the units with few unsolved cells.
+ *   Like NakedSubsets, the sets can be limited to a smaller size, which is
+ *   then also the biggest complement left to NakedSubsets.
+ * @author morel
+ */
+public class HiddenSubsets implements DeductionRule {
+
+    private final PreemptiveSetFinder finder = new PreemptiveSetFinder();
+
+    //Biggest set searched
+    private final int maxSetSize;
+
+    //Positions in the unit where each value is possible
+    private int[] positions = new int[10];
+
+    //The values missing from the unit, and their positions
+    private int[] values = new int[9];
+    private int[] valuePositions = new int[9];
+
+    public HiddenSubsets() {
+        this(PreemptiveSetFinder.MAX_SET_SIZE);
+    }
+
+    /**
+     * Creates the rule for the sets up to a size
+     * @param maxSetSize: the biggest set searched, from 2 (pairs) to 4 (quads)
+     */
+    public HiddenSubsets(int maxSetSize) {
+        if (maxSetSize < 2 || maxSetSize > PreemptiveSetFinder.MAX_SET_SIZE) {
+            throw new IllegalArgumentException("The sets must have 2 to "
+                    + PreemptiveSetFinder.MAX_SET_SIZE + " numbers: " + maxSetSize);
+        }
+        this.maxSetSize = maxSetSize;
+    }
+
+    @Override
+    public Result apply(Grid grid) {
+        Geometry geometry = grid.geometry;
+        if (positions.length <= geometry.size) {
+            positions = new int[geometry.size + 1];
+            values = new int[geometry.size];
+            valuePositions = new int[geometry.size];
+        }
+        Result result = Result.UNCHANGED;
+        for (int unit = 0; unit < geometry.unitCount; unit++) {
+            int[] unitCells = geometry.units[unit];
+            //There are as many values missing as unsolved cells
+            int unsolvedCells = 0;
+            for (int index : unitCells) {
+                if (grid.getValue(index) == 0) {
+                    unsolvedCells++;
+                }
+            }
+            int maxSize = Math.min(maxSetSize, unsolvedCells - maxSetSize - 1);
+            if (maxSize < 2) {
+                continue;
+            }
+            int missing = CandidateSet.fullMask(geometry.size)
+                    & ~grid.getDigitPositions(unit, positions);
+            int count = 0;
+            for (int value = CandidateSet.first(missing); value != 0;
+                    value = CandidateSet.next(missing, value)) {
+                values[count] = value;
+                valuePositions[count] = positions[value];
+                count++;
+            }
+
+            //Each set is a mask of values, and its "numbers" are the
+            //  positions of its cells
+            int setsFound = finder.find(values, valuePositions, count, maxSize, false);
+            grid.preemptiveSets[unit / geometry.size] += setsFound;
+            for (int k = 0; k < setsFound; k++) {
+                int others = CandidateSet.fullMask(geometry.size) & ~finder.getSet(k);
+                int cellPositions = finder.getSetNumbers(k);
+                for (int position = 0; position < unitCells.length; position++) {
+                    int index = unitCells[position];
+                    if ((cellPositions & (1 << position)) != 0 && grid.getValue(index) == 0
+                            && (grid.getMarkup(index) & others) != 0) {
+                        if (!grid.eliminate(index, others)) {
+                            return Result.CONTRADICTION;
+                        }
+                        result = Result.CHANGED;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "hidden subset";
+    }
+}
@@ -0,0 +1,840 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+
+/**
+ * This class follows a board being solved by hand, move after move, and
+ *   tells the next logical step: the cheapest deduction that can be made on
+ *   the board as it is, explained by its rule, its unit and its cells.
+ * The candidates of each cell are kept up to date as the moves are made, so
+ *   nothing is computed again from scratch:
+ *   - the values of each unit are kept as a mask, with the number of cells
+ *     of the unit that have each value, so a value placed twice in a unit by
+ *     mistake is still known once one of them is undone
+ *   - placing a value only removes it from the candidates of the cells of
+ *     its row, column and box, and undoing it only computes again the
+ *     candidates of those cells, from the masks of their units
+ *   - the numbers removed by the steps applied are kept per cell, and left
+ *     out of its candidates until they are undone
+ * nextStep looks for the rules from the cheapest to the most expensive:
+ *   contradictions (a mistake was made), naked singles, hidden singles,
+ *   pointing, box-line reduction, then the naked and hidden subsets of 2, 3
+ *   and 4 cells. It returns null when only a guess could go further.
+ * A session keeps its arrays between calls, so it must only be used by one
+ *   thread at a time.
+ * @author morel
+ */
+public class HintSession {
+
+    /**
+     * The rules of the steps, cheapest first
+     */
+    public enum Rule {
+        CONTRADICTION("contradiction"),             //A unit has a value twice, a
+                                                    //  cell or a value has no place
+        NAKED_SINGLE("naked single"),               //A cell has one candidate
+        HIDDEN_SINGLE("hidden single"),             //A value fits one cell of a unit
+        POINTING("pointing"),                       //A value of a box is in one line
+        BOX_LINE_REDUCTION("box-line reduction"),   //A value of a line is in one box
+        NAKED_SUBSET("naked subset"),               //k cells of a unit have k
+                                                    //  candidates between them
+        HIDDEN_SUBSET("hidden subset");             //k values of a unit fit k cells
+
+        private final String name;
+
+        Rule(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    //Kinds of the entries of the history
+    private static final int PLACE = 0;
+    private static final int ELIMINATE = 1;
+
+    private static final int[] NO_CELLS = new int[0];
+
+    final Geometry geometry;
+
+    //The value and the candidates of each cell, packed as in BoardState
+    private final int[] board;
+
+    //The numbers removed from each cell by the steps applied
+    private final int[] removed;
+
+    //The values of each unit, and the number of its cells that have each
+    //  value, indexed by unit * (size + 1) + value
+    private final int[] used;
+    private final int[] valueCounts;
+
+    private final int fullMask;
+    private int emptyCells;
+
+    //The moves, as entries of 3 ints: the kind, the cell, and the value
+    //  placed or the numbers removed. moveStarts holds the first entry of
+    //  each move
+    private int[] history = new int[3 * 64];
+    private int historyLength;
+    private int[] moveStarts = new int[64];
+    private int moveCount;
+
+    //Work arrays of the searches
+    private final PreemptiveSetFinder finder = new PreemptiveSetFinder();
+    private final int[] positions;
+    private final int[] values;
+    private final int[] valuePositions;
+    private final int[] rowSegments;
+    private final int[] columnSegments;
+
+    /**
+     * Starts a session on a puzzle
+     * @param geometry: the shape of the board
+     * @param puzzle: the values of the puzzle, row after row, 0 if empty
+     */
+    public HintSession(Geometry geometry, int[] puzzle) {
+        if (puzzle.length != geometry.cellCount) {
+            throw new IllegalArgumentException("The board has " + geometry.cellCount
+                    + " cells, not " + puzzle.length);
+        }
+        this.geometry = geometry;
+        int size = geometry.size;
+        board = new int[geometry.cellCount];
+        removed = new int[geometry.cellCount];
+        used = new int[geometry.unitCount];
+        valueCounts = new int[geometry.unitCount * (size + 1)];
+        fullMask = CandidateSet.fullMask(size);
+        positions = new int[size + 1];
+        values = new int[size];
+        valuePositions = new int[size];
+        rowSegments = new int[size * geometry.boxSize];
+        columnSegments = new int[size * geometry.boxSize];
+
+        for (int index = 0; index < puzzle.length; index++) {
+            int value = puzzle[index];
+            if (value < 0 || value > size) {
+                throw new IllegalArgumentException("Invalid value " + value + " at cell " + index);
+            }
+            if (value != 0) {
+                addValue(index, value);
+                board[index] = BoardState.pack(value, 0);
+            } else {
+                emptyCells++;
+            }
+        }
+        for (int index = 0; index < puzzle.length; index++) {
+            if (puzzle[index] == 0) {
+                board[index] = candidates(index);
+            }
+        }
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public int getValue(int row, int column) {
+        return BoardState.value(board[geometry.index(row, column)]);
+    }
+
+    /**
+     * Returns the candidates of a cell: the numbers that none of its units
+     *   has, and that no step applied removed
+     * @param row: the row of the cell
+     * @param column: the column of the cell
+     * @return int: the mask of the numbers (see CandidateSet), 0 if the cell
+     *    has a value
+     */
+    public int getCandidates(int row, int column) {
+        return BoardState.markup(board[geometry.index(row, column)]);
+    }
+
+    /**
+     * Checks whether every cell has a value, with no unit having a value
+     *   twice
+     * @return boolean
+     */
+    public boolean isSolved() {
+        return emptyCells == 0 && findConflict() == null;
+    }
+
+    /**
+     * Returns the number of moves that can be undone
+     * @return int
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Places a value in an empty cell, and removes it from the candidates of
+     *   the cells of its row, column and box
+     * @param row: the row of the cell
+     * @param column: the column of the cell
+     * @param value: the value, from 1 to size
+     * @return boolean: false if the value was not a candidate of the cell,
+     *    in which case it is placed all the same, and nextStep reports the
+     *    contradiction if there is one
+     */
+    public boolean place(int row, int column, int value) {
+        return place(geometry.index(row, column), value);
+    }
+
+    private boolean place(int index, int value) {
+        if (value < 1 || value > geometry.size) {
+            throw new IllegalArgumentException("The values go from 1 to " + geometry.size
+                    + ": " + value);
+        }
+        if (BoardState.value(board[index]) != 0) {
+            throw new IllegalArgumentException("The cell " + cellName(geometry, index)
+                    + " already has a value");
+        }
+        int bit = CandidateSet.bit(value);
+        boolean candidate = (board[index] & bit) != 0;
+        startMove();
+        record(PLACE, index, value);
+        board[index] = BoardState.pack(value, 0);
+        emptyCells--;
+        addValue(index, value);
+        for (int peer : geometry.peers[index]) {
+            if (BoardState.value(board[peer]) == 0) {
+                board[peer] &= ~bit;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Applies a step found by nextStep: places its value, or removes its
+     *   numbers from its cells. It is one move, undone at once by undo
+     * @param step: the step, found on the board as it is
+     * @return boolean: false if the step leaves a cell with no candidate, or
+     *    places a value that is not a candidate
+     */
+    public boolean apply(Step step) {
+        if (step.rule == Rule.CONTRADICTION) {
+            throw new IllegalArgumentException("A contradiction cannot be applied");
+        }
+        if (step.value != 0) {
+            return place(step.cell, step.value);
+        }
+        startMove();
+        boolean possible = true;
+        for (int k = 0; k < step.eliminatedCells.length; k++) {
+            int index = step.eliminatedCells[k];
+            int numbers = BoardState.markup(board[index]) & step.eliminatedNumbers[k];
+            if (BoardState.value(board[index]) != 0 || numbers == 0) {
+                continue;
+            }
+            record(ELIMINATE, index, numbers);
+            removed[index] |= numbers;
+            board[index] &= ~numbers;
+            possible &= board[index] != 0;
+        }
+        return possible;
+    }
+
+    /**
+     * Undoes the last move: a value placed, or a step applied. Only the
+     *   candidates of the cells of the units of the move are computed again
+     * @return boolean: false if there was no move left to undo
+     */
+    public boolean undo() {
+        if (moveCount == 0) {
+            return false;
+        }
+        int start = moveStarts[--moveCount];
+        for (int entry = historyLength - 3; entry >= start; entry -= 3) {
+            int index = history[entry + 1];
+            if (history[entry] == PLACE) {
+                removeValue(index, history[entry + 2]);
+                emptyCells++;
+                board[index] = candidates(index);
+                for (int peer : geometry.peers[index]) {
+                    if (BoardState.value(board[peer]) == 0) {
+                        board[peer] = candidates(peer);
+                    }
+                }
+            } else {
+                removed[index] &= ~history[entry + 2];
+                if (BoardState.value(board[index]) == 0) {
+                    board[index] = candidates(index);
+                }
+            }
+        }
+        historyLength = start;
+        return true;
+    }
+
+    /**
+     * Finds the cheapest step that can be made on the board as it is, without
+     *   changing it
+     * @return Step: the step, or null if the board is solved or no rule
+     *    applies
+     */
+    public Step nextStep() {
+        Step step = findConflict();
+        if (step == null) {
+            step = findNakedSingle();
+        }
+        if (step == null) {
+            step = findHiddenSingle();
+        }
+        if (step == null) {
+            step = findIntersection();
+        }
+        for (int size = 2; step == null && size <= PreemptiveSetFinder.MAX_SET_SIZE; size++) {
+            step = findNakedSubset(size);
+            if (step == null) {
+                step = findHiddenSubset(size);
+            }
+        }
+        return step;
+    }
+
+    /**
+     * Finds a unit that has a value twice
+     * @return Step: a CONTRADICTION, or null
+     */
+    private Step findConflict() {
+        int size = geometry.size;
+        for (int unit = 0; unit < geometry.unitCount; unit++) {
+            for (int value = 1; value <= size; value++) {
+                if (valueCounts[unit * (size + 1) + value] > 1) {
+                    return new Step(geometry, Rule.CONTRADICTION, unit, -1, value,
+                            cellsWith(unit, value), CandidateSet.bit(value), NO_CELLS, NO_CELLS);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a cell with a single candidate, or with none
+     * @return Step: a NAKED_SINGLE or a CONTRADICTION, or null
+     */
+    private Step findNakedSingle() {
+        Step single = null;
+        for (int index = 0; index < board.length; index++) {
+            int cell = board[index];
+            if (cell == 0) {
+                return new Step(geometry, Rule.CONTRADICTION, -1, index, 0, new int[] {index}, 0,
+                        NO_CELLS, NO_CELLS);
+            }
+            if (single == null && BoardState.value(cell) == 0 && CandidateSet.size(cell) == 1) {
+                int value = CandidateSet.first(cell);
+                single = new Step(geometry, Rule.NAKED_SINGLE, -1, index, value, new int[] {index},
+                        cell, NO_CELLS, NO_CELLS);
+            }
+        }
+        return single;
+    }
+
+    /**
+     * Finds a value that fits only one cell of a unit, or none
+     * @return Step: a HIDDEN_SINGLE or a CONTRADICTION, or null
+     */
+    private Step findHiddenSingle() {
+        for (int unit = 0; unit < geometry.unitCount; unit++) {
+            int[] unitCells = geometry.units[unit];
+            findPositions(unitCells);
+            int missing = fullMask & ~used[unit];
+            for (int value = CandidateSet.first(missing); value != 0;
+                    value = CandidateSet.next(missing, value)) {
+                int places = positions[value];
+                if (places == 0) {
+                    return new Step(geometry, Rule.CONTRADICTION, unit, -1, value, NO_CELLS,
+                            CandidateSet.bit(value), NO_CELLS, NO_CELLS);
+                }
+                if ((places & (places - 1)) == 0) {
+                    int index = unitCells[Integer.numberOfTrailingZeros(places)];
+                    return new Step(geometry, Rule.HIDDEN_SINGLE, unit, index, value,
+                            new int[] {index}, CandidateSet.bit(value), NO_CELLS, NO_CELLS);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a value of the intersection (segment) of a box and a line that
+     *   is nowhere else in the box (pointing) or in the line (box-line
+     *   reduction), and that the rest of the other unit still has, as
+     *   IntersectionRemoval does
+     * @return Step: a POINTING or a BOX_LINE_REDUCTION, or null
+     */
+    private Step findIntersection() {
+        int boxSize = geometry.boxSize;
+        Arrays.fill(rowSegments, 0);
+        Arrays.fill(columnSegments, 0);
+        for (int index = 0; index < board.length; index++) {
+            int markup = BoardState.markup(board[index]);
+            int row = geometry.row(index);
+            int column = geometry.column(index);
+            rowSegments[row * boxSize + column / boxSize] |= markup;
+            columnSegments[column * boxSize + row / boxSize] |= markup;
+        }
+        for (int line = 0; line < geometry.size; line++) {
+            for (int band = 0; band < boxSize; band++) {
+                Step step = findIntersection(rowSegments, line, band, true);
+                if (step == null) {
+                    step = findIntersection(columnSegments, line, band, false);
+                }
+                if (step != null) {
+                    return step;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks at one segment
+     * @param segments: the unions of the candidates of the segments of the
+     *    rows or columns
+     * @param line: the row or column of the segment
+     * @param band: the number of the box of the segment in the line
+     * @param isRow: whether the line is a row
+     * @return Step: the step, or null
+     */
+    private Step findIntersection(int[] segments, int line, int band, boolean isRow) {
+        int boxSize = geometry.boxSize;
+        int segment = segments[line * boxSize + band];
+        if (segment == 0) {
+            return null;
+        }
+        int lineRest = 0;
+        for (int other = 0; other < boxSize; other++) {
+            if (other != band) {
+                lineRest |= segments[line * boxSize + other];
+            }
+        }
+        int firstLine = line / boxSize * boxSize;
+        int boxRest = 0;
+        for (int other = firstLine; other < firstLine + boxSize; other++) {
+            if (other != line) {
+                boxRest |= segments[other * boxSize + band];
+            }
+        }
+        int lineUnit = isRow ? geometry.rowUnit(line) : geometry.columnUnit(line);
+        int box = isRow ? firstLine + band : band * boxSize + line / boxSize;
+        int boxUnit = geometry.boxUnit(box);
+
+        int pointing = segment & ~boxRest & lineRest;
+        if (pointing != 0) {
+            int bit = CandidateSet.bit(CandidateSet.first(pointing));
+            return intersectionStep(Rule.POINTING, boxUnit, lineUnit, bit);
+        }
+        int claiming = segment & ~lineRest & boxRest;
+        if (claiming != 0) {
+            int bit = CandidateSet.bit(CandidateSet.first(claiming));
+            return intersectionStep(Rule.BOX_LINE_REDUCTION, lineUnit, boxUnit, bit);
+        }
+        return null;
+    }
+
+    /**
+     * Builds the step of a number confined to the intersection of two units
+     * @param rule: POINTING or BOX_LINE_REDUCTION
+     * @param unit: the unit where the number is confined to the intersection
+     * @param other: the unit it is removed from, out of the intersection
+     * @param bit: the bit of the number
+     * @return Step
+     */
+    private Step intersectionStep(Rule rule, int unit, int other, int bit) {
+        int[] setCells = new int[geometry.boxSize];
+        int setCount = 0;
+        int[] eliminatedCells = new int[geometry.size];
+        int eliminatedCount = 0;
+        for (int index : geometry.units[other]) {
+            if ((board[index] & bit) == 0 || BoardState.value(board[index]) != 0) {
+                continue;
+            }
+            if (contains(geometry.units[unit], index)) {
+                setCells[setCount++] = index;
+            } else {
+                eliminatedCells[eliminatedCount++] = index;
+            }
+        }
+        int[] eliminatedNumbers = new int[eliminatedCount];
+        Arrays.fill(eliminatedNumbers, bit);
+        return new Step(geometry, rule, unit, -1, 0, Arrays.copyOf(setCells, setCount), bit,
+                Arrays.copyOf(eliminatedCells, eliminatedCount), eliminatedNumbers);
+    }
+
+    /**
+     * Finds size cells of a unit whose candidates, put together, only have
+     *   size numbers, which the other cells of the unit still have
+     * @param size: the number of cells of the set
+     * @return Step: a NAKED_SUBSET, or null
+     */
+    private Step findNakedSubset(int size) {
+        for (int unit = 0; unit < geometry.unitCount; unit++) {
+            int[] unitCells = geometry.units[unit];
+            int setsFound = finder.find(board, unitCells, size, false);
+            for (int k = 0; k < setsFound; k++) {
+                int numbers = finder.getSetNumbers(k);
+                if (CandidateSet.size(numbers) == size) {
+                    Step step = subsetStep(Rule.NAKED_SUBSET, unit, finder.getSet(k), numbers,
+                            false);
+                    if (step != null) {
+                        return step;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds size values of a unit that only fit size cells, which still have
+     *   other candidates
+     * @param size: the number of values of the set
+     * @return Step: a HIDDEN_SUBSET, or null
+     */
+    private Step findHiddenSubset(int size) {
+        for (int unit = 0; unit < geometry.unitCount; unit++) {
+            int[] unitCells = geometry.units[unit];
+            findPositions(unitCells);
+            int missing = fullMask & ~used[unit];
+            int count = 0;
+            for (int value = CandidateSet.first(missing); value != 0;
+                    value = CandidateSet.next(missing, value)) {
+                values[count] = value;
+                valuePositions[count] = positions[value];
+                count++;
+            }
+            if (count <= size) {
+                continue;
+            }
+            //Each set is a mask of values, and its "numbers" are the
+            //  positions of its cells
+            int setsFound = finder.find(values, valuePositions, count, size, false);
+            for (int k = 0; k < setsFound; k++) {
+                int numbers = finder.getSet(k);
+                if (CandidateSet.size(numbers) == size) {
+                    Step step = subsetStep(Rule.HIDDEN_SUBSET, unit, finder.getSetNumbers(k),
+                            numbers, true);
+                    if (step != null) {
+                        return step;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the step of a set, if it removes any number
+     * @param rule: NAKED_SUBSET or HIDDEN_SUBSET
+     * @param unit: the unit of the set
+     * @param setPositions: the mask of the positions of its cells in the unit
+     * @param numbers: the mask of its numbers
+     * @param hidden: whether the other numbers are removed from the cells of
+     *    the set, rather than the numbers of the set from the other cells
+     * @return Step: the step, or null if it removes nothing
+     */
+    private Step subsetStep(Rule rule, int unit, int setPositions, int numbers, boolean hidden) {
+        int[] unitCells = geometry.units[unit];
+        int[] setCells = new int[CandidateSet.size(setPositions)];
+        int setCount = 0;
+        int[] eliminatedCells = new int[unitCells.length];
+        int[] eliminatedNumbers = new int[unitCells.length];
+        int eliminatedCount = 0;
+        for (int position = 0; position < unitCells.length; position++) {
+            int index = unitCells[position];
+            if (BoardState.value(board[index]) != 0) {
+                continue;
+            }
+            boolean inSet = (setPositions & (1 << position)) != 0;
+            if (inSet) {
+                setCells[setCount++] = index;
+            }
+            int numbersRemoved = hidden
+                    ? (inSet ? board[index] & ~numbers : 0)
+                    : (inSet ? 0 : board[index] & numbers);
+            if (numbersRemoved != 0) {
+                eliminatedCells[eliminatedCount] = index;
+                eliminatedNumbers[eliminatedCount] = numbersRemoved;
+                eliminatedCount++;
+            }
+        }
+        if (eliminatedCount == 0) {
+            return null;
+        }
+        return new Step(geometry, rule, unit, -1, 0, setCells, numbers,
+                Arrays.copyOf(eliminatedCells, eliminatedCount),
+                Arrays.copyOf(eliminatedNumbers, eliminatedCount));
+    }
+
+    /**
+     * Finds the positions in a unit where each value is a candidate
+     * @param unitCells: the indexes of the cells of the unit
+     */
+    private void findPositions(int[] unitCells) {
+        Arrays.fill(positions, 0);
+        for (int position = 0; position < unitCells.length; position++) {
+            int cell = board[unitCells[position]];
+            if (BoardState.value(cell) != 0) {
+                continue;
+            }
+            for (int value = CandidateSet.first(cell); value != 0;
+                    value = CandidateSet.next(cell, value)) {
+                positions[value] |= 1 << position;
+            }
+        }
+    }
+
+    /**
+     * Returns the cells of a unit that have a value
+     */
+    private int[] cellsWith(int unit, int value) {
+        int[] cells = new int[geometry.size];
+        int count = 0;
+        for (int index : geometry.units[unit]) {
+            if (BoardState.value(board[index]) == value) {
+                cells[count++] = index;
+            }
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    private static boolean contains(int[] cells, int index) {
+        for (int cell : cells) {
+            if (cell == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the candidates of an empty cell, from the values of its units
+     *   and the numbers removed from it
+     * @param index: the index of the cell
+     * @return int: the mask of the candidates
+     */
+    private int candidates(int index) {
+        int[] units = geometry.unitsOfCell[index];
+        return fullMask & ~(used[units[0]] | used[units[1]] | used[units[2]]) & ~removed[index];
+    }
+
+    private void addValue(int index, int value) {
+        for (int unit : geometry.unitsOfCell[index]) {
+            if (valueCounts[unit * (geometry.size + 1) + value]++ == 0) {
+                used[unit] |= CandidateSet.bit(value);
+            }
+        }
+    }
+
+    private void removeValue(int index, int value) {
+        for (int unit : geometry.unitsOfCell[index]) {
+            if (--valueCounts[unit * (geometry.size + 1) + value] == 0) {
+                used[unit] &= ~CandidateSet.bit(value);
+            }
+        }
+    }
+
+    private void startMove() {
+        if (moveCount == moveStarts.length) {
+            moveStarts = Arrays.copyOf(moveStarts, 2 * moveCount);
+        }
+        moveStarts[moveCount++] = historyLength;
+    }
+
+    private void record(int kind, int index, int data) {
+        if (historyLength + 3 > history.length) {
+            history = Arrays.copyOf(history, 2 * history.length);
+        }
+        history[historyLength++] = kind;
+        history[historyLength++] = index;
+        history[historyLength++] = data;
+    }
+
+    /**
+     * Returns the name of a cell: r1c1 for the top left one
+     */
+    static String cellName(Geometry geometry, int index) {
+        return "r" + (geometry.row(index) + 1) + "c" + (geometry.column(index) + 1);
+    }
+
+    /**
+     * Returns the name of a unit: row 1, column 1 or box 1
+     */
+    static String unitName(Geometry geometry, int unit) {
+        if (unit < geometry.size) {
+            return "row " + (unit + 1);
+        }
+        if (unit < 2 * geometry.size) {
+            return "column " + (unit - geometry.size + 1);
+        }
+        return "box " + (unit - 2 * geometry.size + 1);
+    }
+
+    /**
+     * A deduction that can be made on the board
+     */
+    public static class Step {
+
+        final Geometry geometry;
+        final Rule rule;
+
+        //The unit where the deduction is made, -1 for a naked single or a
+        //  cell with no candidate
+        final int unit;
+
+        //The cell that gets a value, or that has no candidate, -1 otherwise
+        final int cell;
+
+        //The value placed by a single, or found twice in the unit
+        final int value;
+
+        //The cells of the set, of the segment or of the single
+        final int[] setCells;
+
+        //The numbers of the set, or the number of the segment
+        final int numbers;
+
+        //The cells whose candidates are removed, and the numbers removed
+        final int[] eliminatedCells;
+        final int[] eliminatedNumbers;
+
+        Step(Geometry geometry, Rule rule, int unit, int cell, int value, int[] setCells,
+                int numbers, int[] eliminatedCells, int[] eliminatedNumbers) {
+            this.geometry = geometry;
+            this.rule = rule;
+            this.unit = unit;
+            this.cell = cell;
+            this.value = value;
+            this.setCells = setCells;
+            this.numbers = numbers;
+            this.eliminatedCells = eliminatedCells;
+            this.eliminatedNumbers = eliminatedNumbers;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        /**
+         * Returns the unit where the deduction is made
+         * @return int: the unit number (see Geometry), -1 for a naked single
+         *    or a cell with no candidate
+         */
+        public int getUnit() {
+            return unit;
+        }
+
+        /**
+         * Returns the cell that gets a value, or that has no candidate
+         * @return int: the index of the cell, -1 for the other steps
+         */
+        public int getCell() {
+            return cell;
+        }
+
+        /**
+         * Returns the value placed by a single, or found twice in a unit
+         * @return int: the value, 0 for the other steps
+         */
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the cells of the preemptive set, of the segment, or of the
+         *   single
+         * @return int[]: the indexes of the cells
+         */
+        public int[] getSetCells() {
+            return setCells.clone();
+        }
+
+        /**
+         * Returns the numbers of the preemptive set, or the number of the
+         *   segment
+         * @return int: the mask of the numbers (see CandidateSet)
+         */
+        public int getNumbers() {
+            return numbers;
+        }
+
+        public int getEliminationCount() {
+            return eliminatedCells.length;
+        }
+
+        /**
+         * Returns a cell whose candidates the step removes
+         * @param k: the number of the elimination
+         * @return int: the index of the cell
+         */
+        public int getEliminatedCell(int k) {
+            return eliminatedCells[k];
+        }
+
+        /**
+         * Returns the candidates the step removes from a cell
+         * @param k: the number of the elimination
+         * @return int: the mask of the numbers
+         */
+        public int getEliminatedNumbers(int k) {
+            return eliminatedNumbers[k];
+        }
+
+        /**
+         * Explains the step: "hidden single: r4c5 = 7 in box 5",
+         *   "naked subset: 2 7 in r1c3 r1c8 of row 1: remove 2 from r1c1"...
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(rule.getName()).append(':');
+            if (rule == Rule.CONTRADICTION) {
+                if (cell >= 0) {
+                    text.append(' ').append(cellName(geometry, cell)).append(" has no candidate");
+                } else if (setCells.length > 0) {
+                    text.append(' ').append(PuzzleReader.toSymbol(value)).append(" is twice in ")
+                            .append(unitName(geometry, unit));
+                } else {
+                    text.append(' ').append(PuzzleReader.toSymbol(value))
+                            .append(" has no place in ").append(unitName(geometry, unit));
+                }
+                return text.toString();
+            }
+            if (value != 0) {
+                text.append(' ').append(cellName(geometry, cell)).append(" = ")
+                        .append(PuzzleReader.toSymbol(value));
+                if (unit >= 0) {
+                    text.append(" in ").append(unitName(geometry, unit));
+                }
+                return text.toString();
+            }
+            appendNumbers(text, numbers);
+            text.append(" in");
+            for (int index : setCells) {
+                text.append(' ').append(cellName(geometry, index));
+            }
+            text.append(" of ").append(unitName(geometry, unit)).append(": remove");
+            for (int k = 0; k < eliminatedCells.length; k++) {
+                //The cells that lose the same numbers are listed together
+                if (k == 0 || eliminatedNumbers[k] != eliminatedNumbers[k - 1]) {
+                    if (k > 0) {
+                        text.append(',');
+                    }
+                    appendNumbers(text, eliminatedNumbers[k]);
+                    text.append(" from");
+                }
+                text.append(' ').append(cellName(geometry, eliminatedCells[k]));
+            }
+            return text.toString();
+        }
+
+        private static void appendNumbers(StringBuilder text, int mask) {
+            for (int value = CandidateSet.first(mask); value != 0;
+                    value = CandidateSet.next(mask, value)) {
+                text.append(' ').append(PuzzleReader.toSymbol(value));
+            }
+        }
+    }
+}
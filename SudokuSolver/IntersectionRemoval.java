@@ -0,0 +1,155 @@
+package SudokuSolver;
+
+/**
+ * This rule looks at the intersection (segment) of each 3x3 grid with each
+ *   row and column:
+ *   - pointing: a number that is possible in the segment but nowhere else in
+ *     the 3x3 grid must be in the segment, so it is removed from the rest of
+ *     the row or column
+ *   - box-line reduction: a number that is possible in the segment but
+ *     nowhere else in the row or column is removed from the rest of the 3x3
+ *     grid
+ * The union of the markups of each segment is computed once per pass, so
+ *   all the numbers of a segment are checked at once with a few masks.
+ * @author morel
+ */
+public class IntersectionRemoval implements DeductionRule {
+
+    //Union of the markups of each segment, indexed by row (or column) *
+    //  boxSize + band, where band is the number of the 3x3 grid in the row
+    private int[] rowSegments = new int[27];
+    private int[] columnSegments = new int[27];
+
+    @Override
+    public Result apply(Grid grid) {
+        Geometry geometry = grid.geometry;
+        int boxSize = geometry.boxSize;
+        int segmentCount = geometry.size * boxSize;
+        if (rowSegments.length < segmentCount) {
+            rowSegments = new int[segmentCount];
+            columnSegments = new int[segmentCount];
+        }
+        for (int i = 0; i < segmentCount; i++) {
+            columnSegments[i] = 0;
+        }
+        //The cells are read in index order, segment after segment, so that
+        //  no row, column or band has to be divided out of the index
+        int index = 0;
+        for (int row = 0; row < geometry.size; row++) {
+            int rowBand = row / boxSize;
+            int column = 0;
+            for (int band = 0; band < boxSize; band++) {
+                int segment = 0;
+                for (int k = 0; k < boxSize; k++, column++, index++) {
+                    int markup = grid.getMarkup(index);
+                    segment |= markup;
+                    columnSegments[column * boxSize + rowBand] |= markup;
+                }
+                rowSegments[row * boxSize + band] = segment;
+            }
+        }
+
+        Result result = Result.UNCHANGED;
+        for (int firstLine = 0; firstLine < geometry.size; firstLine += boxSize) {
+            for (int line = firstLine; line < firstLine + boxSize; line++) {
+                for (int band = 0; band < boxSize; band++) {
+                    Result rowResult = reduce(grid, rowSegments, firstLine, line, band, true);
+                    Result columnResult = reduce(grid, columnSegments, firstLine, line, band,
+                            false);
+                    if (rowResult == Result.CONTRADICTION
+                            || columnResult == Result.CONTRADICTION) {
+                        return Result.CONTRADICTION;
+                    }
+                    if (rowResult == Result.CHANGED || columnResult == Result.CHANGED) {
+                        result = Result.CHANGED;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies the rule to one segment. The numbers removed stay impossible,
+     *   so the unions computed at the start of the pass can still be used
+     *   once some numbers are removed
+     * @param grid: the grid
+     * @param segments: the unions of the segments of the rows or columns
+     * @param firstLine: the first row or column of the band of the segment
+     * @param line: the row or column of the segment
+     * @param band: the number of the 3x3 grid of the segment in the line
+     * @param isRow: whether the line is a row
+     * @return Result
+     */
+    private Result reduce(Grid grid, int[] segments, int firstLine, int line, int band,
+            boolean isRow) {
+        Geometry geometry = grid.geometry;
+        int boxSize = geometry.boxSize;
+        int segment = segments[line * boxSize + band];
+        if (segment == 0) {
+            return Result.UNCHANGED;
+        }
+        int lineRest = 0;
+        for (int other = 0; other < boxSize; other++) {
+            if (other != band) {
+                lineRest |= segments[line * boxSize + other];
+            }
+        }
+        int boxRest = 0;
+        for (int other = firstLine; other < firstLine + boxSize; other++) {
+            if (other != line) {
+                boxRest |= segments[other * boxSize + band];
+            }
+        }
+
+        int pointing = segment & ~boxRest & lineRest;
+        int claiming = segment & ~lineRest & boxRest;
+        if ((pointing | claiming) == 0) {
+            return Result.UNCHANGED;
+        }
+
+        Result result = Result.UNCHANGED;
+        if (pointing != 0) {
+            int unit = isRow ? geometry.rowUnit(line) : geometry.columnUnit(line);
+            for (int index : geometry.units[unit]) {
+                int other = isRow ? geometry.column(index) : geometry.row(index);
+                if (other / boxSize != band) {
+                    result = eliminate(grid, index, pointing, result);
+                    if (result == Result.CONTRADICTION) {
+                        return result;
+                    }
+                }
+            }
+        }
+        if (claiming != 0) {
+            int box = isRow ? firstLine + band : band * boxSize + line / boxSize;
+            for (int index : geometry.units[geometry.boxUnit(box)]) {
+                int other = isRow ? geometry.row(index) : geometry.column(index);
+                if (other != line) {
+                    result = eliminate(grid, index, claiming, result);
+                    if (result == Result.CONTRADICTION) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes numbers from a cell
+     * @param result: the result of the segment so far
+     * @return Result: the result of the segment once the numbers are removed
+     */
+    private static Result eliminate(Grid grid, int index, int numbers, Result result) {
+        if ((grid.getMarkup(index) & numbers) == 0) {
+            return result;
+        }
+        return grid.eliminate(index, numbers) ? Result.CHANGED : Result.CONTRADICTION;
+    }
+
+    @Override
+    public String getName() {
+        return "pointing / box-line reduction";
+    }
+}
@@ -0,0 +1,116 @@
+package SudokuSolver;
+
+/**
+ * This class counts durations in buckets whose width grows with the
+ *   duration, so that percentiles of millions of solves can be computed with
+ *   a fixed amount of memory. Each power of two is split in 32 buckets, so
+ *   a percentile is off by at most about 3%.
+ * It is not thread-safe: each thread should record in its own histogram, and
+ *   the histograms can then be merged with add().
+ * @author morel
+ */
+public class LatencyHistogram {
+
+    //Number of buckets per power of two
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    /**
+     * Records a duration
+     * @param nanos: the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[bucket(nanos)]++;
+        count++;
+        total += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * Adds the durations recorded by another histogram to this one
+     * @param other: the other histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the average duration
+     * @return double: the average in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Returns the duration below which the given fraction of the durations are
+     * @param fraction: between 0 and 1, 0.99 for the 99th percentile
+     * @return long: the upper bound of the bucket of the percentile, in
+     *    nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the bucket of a duration: durations below SUB_BUCKETS have a
+     *   bucket each, the others are split by their highest bit, then by the
+     *   SUB_BUCKET_BITS bits below it
+     */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest duration that falls in a bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,119 @@
+package SudokuSolver;
+
+/**
+ * This class solves single puzzles with the lowest latency, for interactive
+ *   uses where the slowest solves matter more than the throughput:
+ *   - each thread gets a workspace from a thread-local pool, with a Grid and
+ *     a Solver per board size, which are reused by all its solves. The puzzle
+ *     is copied into the grid with setValues and the solution into an array
+ *     of the caller, so once a thread has solved a board of a size, its
+ *     next solves of that size allocate nothing and leave nothing for the
+ *     garbage collector
+ *   - warmUp runs a built-in corpus of puzzles, from easy to pathological,
+ *     through the hot methods of the solver, so that they are compiled by
+ *     the JIT before the first real puzzle arrives
+ * Only the array-based methods are used: the legacy queries of Grid that
+ *   build lists of cells (getRow, getPreemptiveSet with the CELL_TREE
+ *   search...) are never called.
+ * The workspaces stay with their thread for as long as it lives, so this
+ *   class is meant for a fixed set of threads, not for a new thread per
+ *   puzzle.
+ * @author morel
+ */
+public final class LowLatencySolver {
+
+    //Rounds of the corpus run by warmUp()
+    public static final int DEFAULT_WARMUP_ROUNDS = 20;
+
+    //The puzzles of the warm up: easy, medium, hard and pathological ones,
+    //  and one with several solutions
+    private static final String[] WARMUP_PUZZLES = {
+        "003020600900305001001806400008102900700000008006708200002609500800203009005010300",
+        "000000907000420180000705026100904000050000040000507009920108000034059000507000000",
+        "030050040008010500460000012070502080000603000040109030250000098001020600080060020",
+        "400000805030000000000700000020000060000080400000010000000603070500200000104000000",
+        "000000010400000000020000000000050407008000300001090000300400200050100000000806000",
+        "000000012000000003002300400001800005060070800000009000008500000900040500470006000",
+        "000006000059000008200008000045000000003000000006003054000325006000000000000000000"
+    };
+
+    private static final ThreadLocal<Workspace> workspaces =
+            ThreadLocal.withInitial(Workspace::new);
+
+    private LowLatencySolver() {
+    }
+
+    /**
+     * Solves a puzzle with the workspace of the calling thread
+     * @param puzzle: the values of the puzzle, row after row, 0 if empty.
+     *    Its length gives the size of the board
+     * @param solution: gets the values of the first solution found, of the
+     *    same length. Left unchanged if the puzzle has no solution
+     * @return SolveResult.Status: whether the puzzle has zero, one or several
+     *    solutions
+     */
+    public static SolveResult.Status solve(int[] puzzle, int[] solution) {
+        Workspace workspace = workspaces.get();
+        Grid grid = workspace.grid(puzzle.length);
+        grid.setValues(puzzle);
+        return workspace.solvers[grid.geometry.boxSize].solve(grid, solution);
+    }
+
+    /**
+     * Runs the built-in corpus through the solver, then solves an empty board
+     *   of each of the given sizes, which fills the workspace of the calling
+     *   thread for them
+     * @param rounds: the number of times the corpus is solved
+     * @param geometries: the other sizes of boards that will be solved
+     * @return long: the duration of the warm up, in nanoseconds
+     */
+    public static long warmUp(int rounds, Geometry... geometries) {
+        long start = System.nanoTime();
+        int[][] puzzles = new int[WARMUP_PUZZLES.length][];
+        for (int p = 0; p < puzzles.length; p++) {
+            puzzles[p] = new int[WARMUP_PUZZLES[p].length()];
+            for (int index = 0; index < puzzles[p].length; index++) {
+                puzzles[p][index] = PuzzleReader.toValue(WARMUP_PUZZLES[p].charAt(index));
+            }
+        }
+        int[] solution = new int[puzzles[0].length];
+        for (int round = 0; round < rounds; round++) {
+            for (int[] puzzle : puzzles) {
+                solve(puzzle, solution);
+            }
+        }
+        for (Geometry geometry : geometries) {
+            solve(new int[geometry.cellCount], new int[geometry.cellCount]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The grids and solvers of a thread, by box size
+     */
+    private static class Workspace {
+
+        final Grid[] grids = new Grid[Geometry.MAX_BOX_SIZE + 1];
+        final Solver[] solvers = new Solver[Geometry.MAX_BOX_SIZE + 1];
+
+        /**
+         * Returns the grid of the boards of a number of cells, created on
+         *   first use
+         * @param cellCount: the number of cells of the board
+         * @return Grid
+         */
+        Grid grid(int cellCount) {
+            for (int boxSize = 2; boxSize <= Geometry.MAX_BOX_SIZE; boxSize++) {
+                if (boxSize * boxSize * boxSize * boxSize != cellCount) {
+                    continue;
+                }
+                if (grids[boxSize] == null) {
+                    grids[boxSize] = new Grid(Geometry.of(boxSize));
+                    solvers[boxSize] = new Solver();
+                }
+                return grids[boxSize];
+            }
+            throw new IllegalArgumentException("No board has " + cellCount + " cells");
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * This class reads a file of fixed-width records: 81 characters per puzzle,
+ *   optionally followed by '\n' or "\r\n". The file is memory-mapped and the
+ *   digits are decoded straight from the mapped bytes, without creating any
+ *   String.
+ * The file can be split into chunks made of whole records, and each chunk
+ *   can be read by a different thread. A chunk maps its part of the file a
+ *   window at a time, so files bigger than 2 GB can be read.
+ * @author morel
+ */
+public class MappedPuzzleReader implements AutoCloseable {
+
+    //Maximum number of bytes mapped at once by a chunk
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private final FileChannel channel;
+
+    //Number of bytes per record, end of line included
+    private final int recordLength;
+
+    private final long recordCount;
+
+    public MappedPuzzleReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        recordLength = findRecordLength();
+        //The last record may have no end of line
+        recordCount = (channel.size() + recordLength - 81) / recordLength;
+    }
+
+    /**
+     * Looks at the end of the first record to know its length
+     * @return int: 81, 82 or 83
+     */
+    private int findRecordLength() throws IOException {
+        if (channel.size() <= 81) {
+            return 81;
+        }
+        MappedByteBuffer start = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                Math.min(channel.size(), 83));
+        if (start.get(81) == '\n') {
+            return 82;
+        }
+        if (start.get(81) == '\r' && start.limit() > 82 && start.get(82) == '\n') {
+            return 83;
+        }
+        return 81;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * Splits the file into chunks of about the same number of records
+     * @param parts: the number of chunks wanted
+     * @return ArrayList<Chunk>: the chunks, in the order of the file. There
+     *    are fewer chunks than asked if there are fewer records
+     */
+    public ArrayList<Chunk> split(int parts) {
+        ArrayList<Chunk> chunks = new ArrayList<>(parts);
+        long first = 0;
+        for (int i = 0; i < parts; i++) {
+            long end = recordCount * (i + 1) / parts;
+            if (end > first) {
+                chunks.add(new Chunk(first, end));
+            }
+            first = end;
+        }
+        return chunks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A part of the file made of consecutive records, read by a single thread
+     */
+    public class Chunk {
+
+        private final long firstRecord;
+        private final long endRecord;
+
+        //The next record to read
+        private long record;
+
+        //The part of the chunk currently mapped, and its first record
+        private MappedByteBuffer window;
+        private long windowFirstRecord;
+        private long windowEndRecord;
+
+        private final int[] values = new int[81];
+
+        Chunk(long firstRecord, long endRecord) {
+            this.firstRecord = firstRecord;
+            this.endRecord = endRecord;
+            this.record = firstRecord;
+        }
+
+        public long getFirstRecord() {
+            return firstRecord;
+        }
+
+        public long getRecordCount() {
+            return endRecord - firstRecord;
+        }
+
+        /**
+         * Returns the number of the record read by the last call to next, in
+         *   the whole file
+         * @return long
+         */
+        public long getRecordNumber() {
+            return record - 1;
+        }
+
+        /**
+         * Reads the next record of the chunk into the grid
+         * @param grid: the grid that gets the values of the puzzle
+         * @return boolean: false if there are no more records in the chunk
+         * @throws IOException: if the file cannot be mapped
+         * @throws IllegalArgumentException: if a cell is not a digit or '.'.
+         *    The record is skipped, so the chunk can go on with the next one
+         */
+        public boolean next(Grid grid) throws IOException {
+            if (record >= endRecord) {
+                return false;
+            }
+            if (window == null || record >= windowEndRecord) {
+                map();
+            }
+            int offset = (int) ((record - windowFirstRecord) * recordLength);
+            for (int i = 0; i < 81; i++) {
+                int cell = window.get(offset + i);
+                if (cell == '.') {
+                    values[i] = 0;
+                } else if (cell >= '0' && cell <= '9') {
+                    values[i] = cell - '0';
+                } else {
+                    record++;
+                    throw new IllegalArgumentException("Record " + (record - 1)
+                            + " contains an invalid cell: " + (char) cell);
+                }
+            }
+            grid.setValues(values);
+            record++;
+            return true;
+        }
+
+        /**
+         * Maps the next records of the chunk, at most MAX_WINDOW bytes
+         */
+        private void map() throws IOException {
+            long maxRecords = MAX_WINDOW / recordLength;
+            windowFirstRecord = record;
+            windowEndRecord = Math.min(endRecord, record + maxRecords);
+            long position = windowFirstRecord * recordLength;
+            long size = Math.min(channel.size() - position,
+                    (windowEndRecord - windowFirstRecord) * recordLength);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package SudokuSolver;
+
+/**
+ * This rule gives its value to every unsolved cell left with only one
+ *   possible value. Grid.assign and Grid.eliminate already do it for the cells
+ *   they update, so the rule only finds the cells whose markups were changed
+ *   directly.
+ * @author morel
+ */
+public class NakedSingles implements DeductionRule {
+
+    @Override
+    public Result apply(Grid grid) {
+        Result result = Result.UNCHANGED;
+        for (int index = 0; index < grid.geometry.cellCount; index++) {
+            int markup = grid.getMarkup(index);
+            if (grid.getValue(index) == 0 && CandidateSet.size(markup) == 1) {
+                if (!grid.assign(index, CandidateSet.first(markup))) {
+                    return Result.CONTRADICTION;
+                }
+                result = Result.CHANGED;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "naked single";
+    }
+}
@@ -0,0 +1,65 @@
+package SudokuSolver;
+
+/**
+ * This rule finds the preemptive sets of each unit (naked pairs, triples and
+ *   quads): k cells whose markups only contain k numbers. Those numbers are
+ *   removed from the other cells of the unit.
+ * The sets are always searched with masks (SUBSET_MASK), whatever the
+ *   search chosen for the grid. They can be limited to a smaller size, to
+ *   grade how hard a puzzle is (see PuzzleGrader).
+ * @author morel
+ */
+public class NakedSubsets implements DeductionRule {
+
+    private final PreemptiveSetFinder finder = new PreemptiveSetFinder();
+
+    //Biggest set searched
+    private final int maxSetSize;
+
+    public NakedSubsets() {
+        this(PreemptiveSetFinder.MAX_SET_SIZE);
+    }
+
+    /**
+     * Creates the rule for the sets up to a size
+     * @param maxSetSize: the biggest set searched, from 2 (pairs) to 4 (quads)
+     */
+    public NakedSubsets(int maxSetSize) {
+        if (maxSetSize < 2 || maxSetSize > PreemptiveSetFinder.MAX_SET_SIZE) {
+            throw new IllegalArgumentException("The sets must have 2 to "
+                    + PreemptiveSetFinder.MAX_SET_SIZE + " cells: " + maxSetSize);
+        }
+        this.maxSetSize = maxSetSize;
+    }
+
+    @Override
+    public Result apply(Grid grid) {
+        Result result = Result.UNCHANGED;
+        for (int unit = 0; unit < grid.geometry.unitCount; unit++) {
+            int[] unitCells = grid.geometry.units[unit];
+            int setsFound = finder.find(grid.board, unitCells, maxSetSize, false);
+            //The units are the rows, then the columns, then the 3x3 grids
+            grid.preemptiveSets[unit / grid.geometry.size] += setsFound;
+            for (int k = 0; k < setsFound; k++) {
+                int set = finder.getSet(k);
+                int numbers = finder.getSetNumbers(k);
+                for (int position = 0; position < unitCells.length; position++) {
+                    int index = unitCells[position];
+                    if ((set & (1 << position)) == 0 && grid.getValue(index) == 0
+                            && (grid.getMarkup(index) & numbers) != 0) {
+                        if (!grid.eliminate(index, numbers)) {
+                            return Result.CONTRADICTION;
+                        }
+                        result = Result.CHANGED;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "naked subset";
+    }
+}
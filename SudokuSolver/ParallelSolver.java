@@ -0,0 +1,213 @@
+package SudokuSolver;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class solves one grid on several threads. It makes the same guesses
+ *   as the Solver (the cell with the fewest possible values, see
+ *   Solver.getMostConstrainedCell), but the first splitDepth levels of the
+ *   search tree are fork-join tasks: each task gets its own copy of the
+ *   state of the grid (the int array of Grid.saveState), makes its guess on
+ *   the grid of its thread, propagates it, and forks one task per value
+ *   that does not lead to a contradiction. Below splitDepth, a task searches
+ *   its branch with the Solver of its thread, without allocating.
+ * The idle threads steal the tasks left by the others, so a branch that
+ *   turns out to be big is shared out. Once the branches have found
+ *   solutionLimit solutions between them, the tasks not started yet return
+ *   at once and the ones running stop at their next guess.
+ * Like BatchSolver, it keeps one Grid and one Solver per thread. Several
+ *   grids can be solved at once with the same ParallelSolver.
+ * @author morel
+ */
+public class ParallelSolver {
+
+    private final ForkJoinPool pool;
+
+    //Number of search levels split into tasks. Each level multiplies the
+    //  number of tasks by the number of values guessed, 2 or 3 most of the
+    //  time, so the default gives a few tasks per thread
+    public int splitDepth;
+
+    //The search stops once this number of solutions is found. 1 stops at
+    //  the first solution, 2 also tells whether it is unique
+    public int solutionLimit = Solver.SOLUTION_LIMIT;
+
+    //Whether each result gets the stats of its solve (guesses, backtracks,
+    //  and the whole time as searchNanos)
+    public boolean collectStats = false;
+
+    //The grid and the solver of each thread of the pool
+    private final ThreadLocal<Worker> workers = new ThreadLocal<>();
+
+    public ParallelSolver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelSolver(int threads) {
+        pool = new ForkJoinPool(threads);
+        splitDepth = 32 - Integer.numberOfLeadingZeros(threads) + 2;
+    }
+
+    /**
+     * Solves the grid. If it has a solution, the grid is left with the values
+     *   of the first solution found, which is not always the one Solver
+     *   finds first
+     * @param grid: the grid to solve
+     * @return SolveResult: whether the grid has zero, one or several
+     *    solutions, along with the first solution found
+     */
+    public SolveResult solve(Grid grid) {
+        long start = collectStats ? System.nanoTime() : 0;
+        Search search = new Search(grid.geometry, grid.getStateSize());
+        int[] state = new int[grid.getStateSize()];
+        grid.saveState(state);
+        pool.invoke(new SearchTask(search, state, 0));
+
+        int solutionsFound = Math.min(search.solutions.get(), solutionLimit);
+        SolveResult result;
+        if (solutionsFound == 0) {
+            result = new SolveResult(SolveResult.Status.UNSOLVABLE, null, 0);
+        } else {
+            grid.restoreState(search.firstSolution);
+            int[] solution = new int[grid.geometry.cellCount];
+            for (int index = 0; index < solution.length; index++) {
+                solution[index] = grid.getValue(index);
+            }
+            SolveResult.Status status = solutionsFound == 1
+                    ? SolveResult.Status.SOLVED
+                    : SolveResult.Status.MULTIPLE;
+            result = new SolveResult(status, solution, solutionsFound);
+        }
+        if (collectStats) {
+            SolverStats stats = new SolverStats();
+            stats.solves = 1;
+            stats.guesses = search.guesses.sum();
+            stats.backtracks = search.backtracks.sum();
+            stats.searchNanos = System.nanoTime() - start;
+            result.stats = stats;
+        }
+        return result;
+    }
+
+    /**
+     * Stops the threads of the pool. The solver cannot be used afterwards
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Returns the grid and the solver of the current thread, for a geometry
+     * @param geometry: the geometry of the grid being solved
+     * @return Worker
+     */
+    private Worker getWorker(Geometry geometry) {
+        Worker worker = workers.get();
+        if (worker == null || worker.grid.geometry != geometry) {
+            worker = new Worker(geometry);
+            workers.set(worker);
+        }
+        return worker;
+    }
+
+    /**
+     * The grid and the solver used by one thread
+     */
+    private static final class Worker {
+        final Grid grid;
+        final Solver solver = new Solver();
+
+        Worker(Geometry geometry) {
+            grid = new Grid(geometry);
+        }
+    }
+
+    /**
+     * What the tasks of one solve share
+     */
+    private final class Search {
+        final Geometry geometry;
+        final AtomicInteger solutions = new AtomicInteger();
+        final int[] firstSolution;
+        final LongAdder guesses = new LongAdder();
+        final LongAdder backtracks = new LongAdder();
+
+        Search(Geometry geometry, int stateSize) {
+            this.geometry = geometry;
+            firstSolution = new int[stateSize];
+        }
+
+        boolean isDone() {
+            return solutions.get() >= solutionLimit;
+        }
+    }
+
+    /**
+     * Searches the branch of the search tree below a state of the grid
+     */
+    private final class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final int[] state;
+        private final int depth;
+
+        SearchTask(Search search, int[] state, int depth) {
+            this.search = search;
+            this.state = state;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (search.isDone()) {
+                return;
+            }
+            Worker worker = getWorker(search.geometry);
+            Grid grid = worker.grid;
+            Solver solver = worker.solver;
+            grid.restoreState(state);
+            if (depth == 0) {
+                //The state of the given grid, whose markups are not set yet
+                grid.markup();
+                if (grid.hasContradiction() || !solver.propagate(grid, 0)) {
+                    return;
+                }
+            }
+
+            int cell = solver.getMostConstrainedCell(grid);
+            if (depth >= splitDepth || cell < 0) {
+                //Also records the solution when the grid is solved
+                solver.searchBranch(grid, depth, solutionLimit, search.solutions,
+                        search.firstSolution);
+                search.guesses.add(solver.getGuesses());
+                search.backtracks.add(solver.getBacktracks());
+                return;
+            }
+
+            //The task owns its state, so it can save the propagated grid in it
+            grid.saveState(state);
+            ArrayList<SearchTask> branches = new ArrayList<>();
+            int candidates = grid.getMarkup(cell);
+            for (int value = CandidateSet.first(candidates); value != 0;
+                    value = CandidateSet.next(candidates, value)) {
+                search.guesses.increment();
+                grid.restoreState(state);
+                if (grid.assign(cell, value) && solver.propagate(grid, depth + 1)) {
+                    int[] branch = new int[state.length];
+                    grid.saveState(branch);
+                    branches.add(new SearchTask(search, branch, depth + 1));
+                } else {
+                    search.backtracks.increment();
+                }
+            }
+            //The tasks run on this thread may use its grid, which is not
+            //  needed anymore
+            invokeAll(branches);
+        }
+    }
+}
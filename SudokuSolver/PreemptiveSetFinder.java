@@ -0,0 +1,181 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+
+/**
+ * This class finds the preemptive sets (naked pairs, triples and quads) of a
+ *   unit: k unsolved cells whose markups, put together, only contain k
+ *   numbers. Those numbers can then be removed from the other cells of the
+ *   unit.
+ * The subsets of the unsolved cells are enumerated by increasing size, and
+ *   the union of their markups is kept as a mask. A subset is dropped as soon
+ *   as its union has more numbers than the size searched, so no tree is built
+ *   and nothing is allocated once the arrays are big enough. The cells with
+ *   more than MAX_SET_SIZE numbers cannot be part of a set, so they are left
+ *   out of the enumeration, which matters on 16x16 and 25x25 grids.
+ * A set is stored as a mask of the positions of its cells in the unit.
+ * The same search finds the hidden sets when it is given, for each number
+ *   missing from a unit, the mask of the positions where it is possible:
+ *   k numbers that only fit in k cells.
+ * @author morel
+ */
+class PreemptiveSetFinder {
+
+    //Biggest preemptive set searched (quads)
+    static final int MAX_SET_SIZE = 4;
+
+    //Positions in the unit and markups of the unsolved cells that can be
+    //  part of a set
+    private int[] positions = new int[9];
+    private int[] markups = new int[9];
+    private int candidateCells;
+
+    //Sets found by the last call to find
+    private int[] sets = new int[16];
+    private int[] setNumbers = new int[16];
+    private int setsFound;
+
+    /**
+     * Finds the preemptive sets of a unit
+     * @param board: the packed cells of the grid (see BoardState)
+     * @param unitCells: the indexes of the cells of the unit
+     * @param firstOnly: whether to stop at the first (smallest) set found
+     * @return int: the number of sets found
+     */
+    int find(int[] board, int[] unitCells, boolean firstOnly) {
+        return find(board, unitCells, MAX_SET_SIZE, firstOnly);
+    }
+
+    /**
+     * Finds the preemptive sets of a unit, up to a size
+     * @param board: the packed cells of the grid (see BoardState)
+     * @param unitCells: the indexes of the cells of the unit
+     * @param maxSize: the biggest set searched, at most MAX_SET_SIZE
+     * @param firstOnly: whether to stop at the first (smallest) set found
+     * @return int: the number of sets found
+     */
+    int find(int[] board, int[] unitCells, int maxSize, boolean firstOnly) {
+        if (positions.length < unitCells.length) {
+            positions = new int[unitCells.length];
+            markups = new int[unitCells.length];
+        }
+        candidateCells = 0;
+        int unsolvedCells = 0;
+        for (int position = 0; position < unitCells.length; position++) {
+            int cell = board[unitCells[position]];
+            if (BoardState.value(cell) == 0) {
+                unsolvedCells++;
+                if (CandidateSet.size(cell) <= maxSize) {
+                    positions[candidateCells] = position;
+                    markups[candidateCells] = BoardState.markup(cell);
+                    candidateCells++;
+                }
+            }
+        }
+        return findSets(Math.min(maxSize, unsolvedCells - 1), firstOnly);
+    }
+
+    /**
+     * Finds the sets among any elements given with a mask each: k elements
+     *   whose masks, put together, only have k bits
+     * @param ids: the bit of each element in the sets found, below 32
+     * @param masks: the mask of each element
+     * @param count: the number of elements
+     * @param maxSize: the biggest set searched, at most MAX_SET_SIZE
+     * @param firstOnly: whether to stop at the first (smallest) set found
+     * @return int: the number of sets found
+     */
+    int find(int[] ids, int[] masks, int count, int maxSize, boolean firstOnly) {
+        if (positions.length < count) {
+            positions = new int[count];
+            markups = new int[count];
+        }
+        candidateCells = 0;
+        for (int i = 0; i < count; i++) {
+            if (CandidateSet.size(masks[i]) <= maxSize) {
+                positions[candidateCells] = ids[i];
+                markups[candidateCells] = masks[i];
+                candidateCells++;
+            }
+        }
+        return findSets(Math.min(maxSize, count - 1), firstOnly);
+    }
+
+    /**
+     * Searches the sets among the elements copied by find
+     * @param maxSize: the biggest set searched. A set containing all the
+     *    unsolved cells removes nothing, so it must be smaller than their
+     *    number
+     * @param firstOnly: whether to stop at the first (smallest) set found
+     * @return int: the number of sets found
+     */
+    private int findSets(int maxSize, boolean firstOnly) {
+        setsFound = 0;
+        for (int size = 2; size <= maxSize; size++) {
+            search(size, 0, 0, 0, 0, firstOnly);
+            if (firstOnly && setsFound > 0) {
+                break;
+            }
+        }
+        return setsFound;
+    }
+
+    /**
+     * Adds one more cell to the current subset, or records the subset if it
+     *   has the size searched
+     * @param size: the size of the sets searched
+     * @param start: the first unsolved cell that can still be added
+     * @param count: the number of cells in the current subset
+     * @param set: the positions of the cells of the current subset
+     * @param numbers: the union of the markups of the current subset
+     * @param firstOnly: whether to stop at the first set found
+     */
+    private void search(int size, int start, int count, int set, int numbers,
+            boolean firstOnly) {
+        if (count == size) {
+            if (CandidateSet.size(numbers) == size) {
+                addSet(set, numbers);
+            }
+            return;
+        }
+        //Leave enough cells to complete the subset
+        for (int i = start; i <= candidateCells - (size - count); i++) {
+            int union = numbers | markups[i];
+            if (CandidateSet.size(union) <= size) {
+                search(size, i + 1, count + 1, set | (1 << positions[i]), union,
+                        firstOnly);
+                if (firstOnly && setsFound > 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void addSet(int set, int numbers) {
+        if (setsFound == sets.length) {
+            sets = Arrays.copyOf(sets, 2 * setsFound);
+            setNumbers = Arrays.copyOf(setNumbers, 2 * setsFound);
+        }
+        sets[setsFound] = set;
+        setNumbers[setsFound] = numbers;
+        setsFound++;
+    }
+
+    /**
+     * Returns a set found by the last call to find
+     * @param k: the number of the set
+     * @return int: the mask of the positions of the cells of the set in the unit
+     */
+    int getSet(int k) {
+        return sets[k];
+    }
+
+    /**
+     * Returns the numbers of a set found by the last call to find
+     * @param k: the number of the set
+     * @return int: the mask of the numbers of the set
+     */
+    int getSetNumbers(int k) {
+        return setNumbers[k];
+    }
+}
@@ -0,0 +1,397 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class generates puzzles with a unique solution, and grades them with
+ *   a PuzzleGrader:
+ *   - a random full grid is made by filling the boxes of the diagonal with
+ *     random permutations (they do not see each other), and solving the rest
+ *   - the clues are removed one by one in a random order. A clue is kept if
+ *     the puzzle without it has another solution: the value of the solution
+ *     is removed from the markup of its cell, and the Solver looks for any
+ *     solution left. It usually finds a contradiction after a few
+ *     deductions, which is much cheaper than counting the solutions.
+ *     Before that, a clue whose value follows from the clues of its units
+ *     alone, as a naked or a hidden single, is removed without a search:
+ *     while the puzzle still has many clues, that is the case of most of
+ *     them
+ * Every clue is tried once, and removing clues never removes solutions, so
+ *   the puzzles are minimal: none of their clues can be removed.
+ * Proving that a puzzle is minimal takes a search per clue left. When
+ *   targetClues is set, the puzzles are not made minimal: the clues are
+ *   removed in batches of REMOVAL_BATCH, each checked with one search for a
+ *   second solution and put back if there is one, until the puzzle has
+ *   targetClues clues, or the order ends with a few more. This is several
+ *   times faster.
+ * A puzzle only depends on its seed, so the puzzles of a run can be made
+ *   again with the same seeds, on any number of threads. A generator keeps
+ *   its grid and its solver between puzzles, so it must not be used by
+ *   several threads at once. Boards bigger than 9x9 can be generated, but
+ *   each of their clues is much more expensive to check.
+ * @author morel
+ */
+public class PuzzleGenerator {
+
+    //Number of clues removed before the uniqueness of the puzzle is checked,
+    //  when targetClues is set
+    public static final int REMOVAL_BATCH = 4;
+
+    final Geometry geometry;
+
+    //The number of clues of the puzzles, or 0 for minimal puzzles
+    public int targetClues = 0;
+
+    private final Grid grid;
+    private final Solver solver = new Solver();
+    private final PuzzleGrader grader = new PuzzleGrader();
+
+    //The cells in the order their clues are removed
+    private final int[] order;
+
+    //The values of the clues of each unit
+    private final int[] unitClues;
+
+    public PuzzleGenerator(Geometry geometry) {
+        this.geometry = geometry;
+        grid = new Grid(geometry);
+        order = new int[geometry.cellCount];
+        unitClues = new int[geometry.unitCount];
+        //The full grids and the checks of the clues are searches that mostly
+        //  guess: the deduction rules cost more there than they save (about
+        //  20% of the time of a puzzle)
+        solver.usePreemptiveSets = false;
+    }
+
+    /**
+     * Generates a puzzle
+     * @param seed: the seed of the puzzle
+     * @return Puzzle: the clues, the solution and the grade of the puzzle
+     */
+    public Puzzle generate(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] solution = fill(random);
+
+        int[] clues = solution.clone();
+        for (int index = 0; index < order.length; index++) {
+            int other = random.nextInt(index + 1);
+            order[index] = order[other];
+            order[other] = index;
+        }
+        for (int unit = 0; unit < unitClues.length; unit++) {
+            unitClues[unit] = CandidateSet.fullMask(geometry.size);
+        }
+        if (targetClues > 0) {
+            removeClues(clues, solution);
+        } else {
+            for (int index : order) {
+                int bit = CandidateSet.bit(solution[index]);
+                clues[index] = 0;
+                setClue(index, bit, false);
+                if (!isSingle(clues, index, bit)
+                        && hasOtherSolution(clues, index, solution[index])) {
+                    clues[index] = solution[index];
+                    setClue(index, bit, true);
+                }
+            }
+        }
+        return new Puzzle(seed, clues, solution, grader.grade(geometry, clues));
+    }
+
+    /**
+     * Removes clues in the random order until the puzzle has targetClues
+     *   clues. The clues that are not singles are removed REMOVAL_BATCH at a
+     *   time, and the whole batch is put back if the puzzle is no longer
+     *   unique
+     * @param clues: the full grid, left with the clues of the puzzle
+     * @param solution: the values of the full grid
+     */
+    private void removeClues(int[] clues, int[] solution) {
+        int clueCount = clues.length;
+        int[] batch = new int[REMOVAL_BATCH];
+        int batchSize = 0;
+        for (int index : order) {
+            if (clueCount <= targetClues) {
+                break;
+            }
+            int bit = CandidateSet.bit(solution[index]);
+            clues[index] = 0;
+            setClue(index, bit, false);
+            clueCount--;
+            if (isSingle(clues, index, bit)) {
+                continue;
+            }
+            batch[batchSize++] = index;
+            if (batchSize == REMOVAL_BATCH || clueCount <= targetClues) {
+                if (!isUnique(clues)) {
+                    clueCount += restore(clues, solution, batch, batchSize);
+                }
+                batchSize = 0;
+            }
+        }
+        if (batchSize > 0 && !isUnique(clues)) {
+            restore(clues, solution, batch, batchSize);
+        }
+    }
+
+    /**
+     * Puts back the clues of a batch
+     * @param clues: the puzzle
+     * @param solution: the values of the full grid
+     * @param batch: the cells of the clues
+     * @param batchSize: the number of clues
+     * @return int: the number of clues put back
+     */
+    private int restore(int[] clues, int[] solution, int[] batch, int batchSize) {
+        for (int k = 0; k < batchSize; k++) {
+            clues[batch[k]] = solution[batch[k]];
+            setClue(batch[k], CandidateSet.bit(solution[batch[k]]), true);
+        }
+        return batchSize;
+    }
+
+    /**
+     * Checks whether a puzzle has a single solution
+     * @param clues: the puzzle
+     * @return boolean
+     */
+    private boolean isUnique(int[] clues) {
+        grid.setValues(clues);
+        return solver.countSolutions(grid, 2) == 1;
+    }
+
+    /**
+     * Makes a random full grid
+     * @param random: the random numbers of the puzzle
+     * @return int[]: the values of the grid, row after row
+     */
+    private int[] fill(SplittableRandom random) {
+        int size = geometry.size;
+        int boxSize = geometry.boxSize;
+        int[] values = new int[geometry.cellCount];
+        int[] permutation = new int[size];
+        for (int box = 0; box < boxSize; box++) {
+            for (int k = 0; k < size; k++) {
+                int other = random.nextInt(k + 1);
+                permutation[k] = permutation[other];
+                permutation[other] = k + 1;
+            }
+            for (int k = 0; k < size; k++) {
+                int row = box * boxSize + k / boxSize;
+                int column = box * boxSize + k % boxSize;
+                values[geometry.index(row, column)] = permutation[k];
+            }
+        }
+        grid.setValues(values);
+        //The boxes of the diagonal never conflict, so there is a solution
+        return solver.solve(grid).getSolution();
+    }
+
+    /**
+     * Adds or removes a clue in the masks of its units
+     * @param index: the cell of the clue
+     * @param bit: the bit of its value
+     * @param set: true to add it, false to remove it
+     */
+    private void setClue(int index, int bit, boolean set) {
+        for (int unit : geometry.unitsOfCell[index]) {
+            unitClues[unit] = set ? unitClues[unit] | bit : unitClues[unit] & ~bit;
+        }
+    }
+
+    /**
+     * Checks whether the value of an empty cell follows from the clues of
+     *   the units alone: the clues of its units have all the other values
+     *   (naked single), or the other cells of one of its units cannot have
+     *   the value (hidden single). The puzzle then has no other solution
+     * @param clues: the puzzle, where the cell is empty
+     * @param index: the cell
+     * @param bit: the bit of the value of the cell in the original solution
+     * @return boolean
+     */
+    private boolean isSingle(int[] clues, int index, int bit) {
+        int[] units = geometry.unitsOfCell[index];
+        int seen = unitClues[units[0]] | unitClues[units[1]] | unitClues[units[2]];
+        if ((seen | bit) == CandidateSet.fullMask(geometry.size)) {
+            return true;
+        }
+        for (int unit : units) {
+            boolean hidden = true;
+            for (int cell : geometry.units[unit]) {
+                if (cell == index || clues[cell] != 0) {
+                    continue;
+                }
+                int[] cellUnits = geometry.unitsOfCell[cell];
+                if (((unitClues[cellUnits[0]] | unitClues[cellUnits[1]]
+                        | unitClues[cellUnits[2]]) & bit) == 0) {
+                    hidden = false;
+                    break;
+                }
+            }
+            if (hidden) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a puzzle has a solution where a cell does not have the
+     *   value of the original solution
+     * @param clues: the puzzle, where the cell is empty
+     * @param index: the cell
+     * @param value: the value of the cell in the original solution
+     * @return boolean: true if the clue of the cell is needed
+     */
+    private boolean hasOtherSolution(int[] clues, int index, int value) {
+        grid.setValues(clues);
+        if (!grid.eliminate(index, CandidateSet.bit(value))) {
+            return false;
+        }
+        return solver.countSolutions(grid, 1) > 0;
+    }
+
+    /**
+     * Generates puzzles on several threads, and writes them in the order of
+     *   their seeds, one line per puzzle: the symbols of the puzzle, then its
+     *   grade (see PuzzleGrader.Grade), so that the output can be solved by
+     *   BatchSolver. The puzzle number i has the seed firstSeed + i
+     * @param geometry: the shape of the boards
+     * @param count: the number of puzzles
+     * @param firstSeed: the seed of the first puzzle
+     * @param threads: the number of threads
+     * @param output: where the puzzles are written
+     * @throws IOException: if the output cannot be written
+     */
+    public static void generate(Geometry geometry, long count, long firstSeed, int threads,
+            Writer output) throws IOException {
+        generate(geometry, count, firstSeed, threads, 0, output);
+    }
+
+    /**
+     * Generates puzzles as above, with targetClues clues instead of minimal
+     *   ones, unless it is 0
+     * @param geometry: the shape of the boards
+     * @param count: the number of puzzles
+     * @param firstSeed: the seed of the first puzzle
+     * @param threads: the number of threads
+     * @param targetClues: the number of clues of the puzzles, or 0
+     * @param output: where the puzzles are written
+     * @throws IOException: if the output cannot be written
+     */
+    public static void generate(Geometry geometry, long count, long firstSeed, int threads,
+            int targetClues, Writer output) throws IOException {
+        ThreadLocal<PuzzleGenerator> generators = ThreadLocal.withInitial(() -> {
+            PuzzleGenerator generator = new PuzzleGenerator(geometry);
+            generator.targetClues = targetClues;
+            return generator;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        //At most this number of puzzles are generated ahead of the one
+        //  being written
+        int maxPending = threads * 64;
+        ArrayDeque<Future<Puzzle>> pending = new ArrayDeque<>(maxPending);
+        try {
+            for (long i = 0; i < count; i++) {
+                if (pending.size() == maxPending) {
+                    write(pending.poll(), output);
+                }
+                final long seed = firstSeed + i;
+                pending.add(executor.submit(() -> generators.get().generate(seed)));
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), output);
+            }
+            output.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void write(Future<Puzzle> future, Writer output) throws IOException {
+        Puzzle puzzle;
+        try {
+            puzzle = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating", e);
+        } catch (ExecutionException e) {
+            throw new IOException("A puzzle could not be generated", e.getCause());
+        }
+        output.write(puzzle.toString());
+        output.write(' ');
+        output.write(puzzle.grade.toString());
+        output.write('\n');
+    }
+
+    /**
+     * A generated puzzle
+     */
+    public static class Puzzle {
+
+        final long seed;
+        final int[] clues;
+        final int[] solution;
+        final PuzzleGrader.Grade grade;
+
+        Puzzle(long seed, int[] clues, int[] solution, PuzzleGrader.Grade grade) {
+            this.seed = seed;
+            this.clues = clues;
+            this.solution = solution;
+            this.grade = grade;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Returns the values of the puzzle, row after row, 0 if empty
+         * @return int[]
+         */
+        public int[] getClues() {
+            return clues;
+        }
+
+        public int[] getSolution() {
+            return solution;
+        }
+
+        public PuzzleGrader.Grade getGrade() {
+            return grade;
+        }
+
+        /**
+         * Returns the number of cells that have a value in the puzzle
+         * @return int
+         */
+        public int getClueCount() {
+            int count = 0;
+            for (int value : clues) {
+                if (value != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * The symbols of the puzzle, row after row, as read by PuzzleReader
+         */
+        @Override
+        public String toString() {
+            char[] symbols = new char[clues.length];
+            for (int index = 0; index < clues.length; index++) {
+                symbols[index] = PuzzleReader.toSymbol(clues[index]);
+            }
+            return new String(symbols);
+        }
+    }
+}
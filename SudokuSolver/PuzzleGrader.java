@@ -0,0 +1,142 @@
+package SudokuSolver;
+
+/**
+ * This class grades how hard a puzzle is by the techniques it needs, from
+ *   the cheapest to the most expensive:
+ *   - MARKUP: Grid.markup() alone solves it (naked singles)
+ *   - HIDDEN_SINGLES: also needs the values that fit in only one cell of a
+ *     unit
+ *   - INTERSECTIONS: also needs pointing and box-line reduction
+ *   - PREEMPTIVE_SETS: also needs preemptive sets (naked or hidden) of up to
+ *     setSize cells, from 2 to 4
+ *   - SEARCH: cannot be solved without guessing; searchDepth is the deepest
+ *     level of guesses the Solver reached
+ * Each level runs on the grid left by the previous one, with the rules of the
+ *   previous levels first, so the deductions are never made twice.
+ * The grader keeps its grid, its pipelines and its solver between puzzles,
+ *   so it must not be used by several threads at once.
+ * @author morel
+ */
+public class PuzzleGrader {
+
+    /**
+     * The techniques a puzzle needs, cheapest first
+     */
+    public enum Level {
+        MARKUP,
+        HIDDEN_SINGLES,
+        INTERSECTIONS,
+        PREEMPTIVE_SETS,
+        SEARCH,
+        INVALID         //The puzzle has no solution
+    }
+
+    //The pipelines of the levels HIDDEN_SINGLES to PREEMPTIVE_SETS, with the
+    //  sets of 2, 3 then 4 cells
+    private final DeductionPipeline[] pipelines;
+
+    private final Solver solver = new Solver();
+    private Grid grid;
+
+    public PuzzleGrader() {
+        int maxSetSize = PreemptiveSetFinder.MAX_SET_SIZE;
+        pipelines = new DeductionPipeline[2 + maxSetSize - 1];
+        pipelines[0] = new DeductionPipeline()
+                .add(new NakedSingles())
+                .add(new HiddenSingles());
+        pipelines[1] = new DeductionPipeline()
+                .add(new NakedSingles())
+                .add(new HiddenSingles())
+                .add(new IntersectionRemoval());
+        for (int size = 2; size <= maxSetSize; size++) {
+            pipelines[size] = new DeductionPipeline()
+                    .add(new NakedSingles())
+                    .add(new HiddenSingles())
+                    .add(new IntersectionRemoval())
+                    .add(new NakedSubsets(size))
+                    .add(new HiddenSubsets(size));
+        }
+    }
+
+    /**
+     * Grades a puzzle
+     * @param geometry: the shape of the board
+     * @param puzzle: the values of the puzzle, row after row, 0 if empty
+     * @return Grade: the techniques the puzzle needs
+     */
+    public Grade grade(Geometry geometry, int[] puzzle) {
+        if (grid == null || grid.geometry != geometry) {
+            grid = new Grid(geometry);
+        }
+        grid.setValues(puzzle);
+        grid.markup();
+        if (grid.hasContradiction()) {
+            return new Grade(Level.INVALID, 0, 0);
+        }
+        if (grid.isSolved()) {
+            return new Grade(Level.MARKUP, 0, 0);
+        }
+        for (int p = 0; p < pipelines.length; p++) {
+            if (!pipelines[p].run(grid)) {
+                return new Grade(Level.INVALID, 0, 0);
+            }
+            if (grid.isSolved()) {
+                return p == 0 ? new Grade(Level.HIDDEN_SINGLES, 0, 0)
+                        : p == 1 ? new Grade(Level.INTERSECTIONS, 0, 0)
+                        : new Grade(Level.PREEMPTIVE_SETS, p, 0);
+            }
+        }
+        if (solver.solve(grid).getStatus() == SolveResult.Status.UNSOLVABLE) {
+            return new Grade(Level.INVALID, 0, 0);
+        }
+        return new Grade(Level.SEARCH, 0, solver.getMaxDepth());
+    }
+
+    /**
+     * The grade of a puzzle
+     */
+    public static class Grade {
+
+        final Level level;
+
+        //Biggest preemptive set needed, for PREEMPTIVE_SETS
+        final int setSize;
+
+        //Deepest level of guesses, for SEARCH
+        final int searchDepth;
+
+        Grade(Level level, int setSize, int searchDepth) {
+            this.level = level;
+            this.setSize = setSize;
+            this.searchDepth = searchDepth;
+        }
+
+        public Level getLevel() {
+            return level;
+        }
+
+        public int getSetSize() {
+            return setSize;
+        }
+
+        public int getSearchDepth() {
+            return searchDepth;
+        }
+
+        /**
+         * The level in lower case, with the size of the sets or the depth
+         *   of the search: "markup", "preemptive-sets-3", "search-2"...
+         */
+        @Override
+        public String toString() {
+            String name = level.name().toLowerCase().replace('_', '-');
+            if (level == Level.PREEMPTIVE_SETS) {
+                return name + "-" + setSize;
+            }
+            if (level == Level.SEARCH) {
+                return name + "-" + searchDepth;
+            }
+            return name;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package SudokuSolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * This class reads puzzles one after the other from a text input. A 9x9
+ *   puzzle is either written on one line of 81 characters, or on 9 lines of 9
+ *   characters (the format read by Sudoku.fillGrid). Empty cells are written
+ *   0 or '.'. Blank lines and lines starting with '#' are skipped. A line
+ *   with more symbols than the cells of a board is malformed.
+ * Bigger puzzles (16x16, 25x25) are written the same way, with one symbol
+ *   per value: 1 to 9, then A for 10, B for 11... (see toSymbol). They can
+ *   also be written one row per line, with the values as numbers separated
+ *   by spaces, which is needed when the values are not single symbols:
+ *     12 . 3 16 0 ...
+ * A line of 16 symbols is either a whole 4x4 puzzle or the first row of a
+ *   16x16 one. It is read as a row if it, or the next line of 16 symbols,
+ *   has a value above 4, which a 4x4 puzzle cannot have. So a 16x16 puzzle
+ *   written one row per line must have a value above 4 in one of its first
+ *   two rows, or be written on one line or with numbers.
+ * Whatever the input format, a puzzle is returned as one line of symbols.
+ * A malformed puzzle only costs its own lines: once next() has thrown an
+ *   IllegalArgumentException, it can be called again for the next puzzle.
+ *   A line that should have been a row but is not is read again as the
+ *   start of the next puzzle, so a puzzle cut short does not take the one
+ *   after it along.
+ * @author morel
+ */
+public class PuzzleReader {
+
+    private final BufferedReader reader;
+
+    //Number of lines read so far, to locate errors
+    private int lineNumber;
+
+    //A line read too far, returned again by the next call to nextLine, or
+    //  null
+    private String pushedBack;
+
+    public PuzzleReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next puzzle
+     * @return String: the symbols of the puzzle, row after row, 0 for an
+     *    empty cell, or null if there are no more puzzles
+     * @throws IOException: if the input cannot be read
+     * @throws IllegalArgumentException: if a line is not part of a puzzle.
+     *    The reader can go on with the next puzzle
+     */
+    public String next() throws IOException {
+        String line = nextLine();
+        if (line == null) {
+            return null;
+        }
+        String[] tokens = line.split("\\s+");
+        if (tokens.length > 1 && isNumber(tokens[0]) && isNumber(tokens[1])) {
+            return readNumberRows(tokens);
+        }
+
+        //Anything after the symbols, such as " multiple" in the output of
+        //  BatchSolver, is ignored
+        String symbols = tokens[0];
+        //A whole puzzle has exactly one symbol per cell: a line with more is
+        //  malformed, not a puzzle followed by extra symbols
+        for (int size = 9; size <= Geometry.MAX_BOX_SIZE * Geometry.MAX_BOX_SIZE; size++) {
+            if (symbols.length() == size * size && isBoardSize(size)) {
+                return normalize(symbols, size);
+            }
+        }
+        int size = symbols.length();
+        if (!isBoardSize(size)) {
+            throw new IllegalArgumentException("Line " + lineNumber
+                    + " is neither a row nor a whole puzzle: " + line);
+        }
+        if (size == 4 * 4 && isSmallPuzzle(symbols)) {
+            return normalize(symbols, 4);
+        }
+
+        //The puzzle is written on one line per row
+        StringBuilder puzzle = new StringBuilder(size * size);
+        puzzle.append(symbols);
+        for (int i = 1; i < size; i++) {
+            line = nextLine();
+            if (line == null || line.length() != size) {
+                pushBack(line);
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + " should be row #" + i + " of a puzzle");
+            }
+            puzzle.append(line);
+        }
+        return normalize(puzzle.toString(), size);
+    }
+
+    /**
+     * Reads a puzzle written one row per line, with the values as numbers
+     * @param firstRow: the values of the first row, already read
+     * @return String: the symbols of the puzzle
+     */
+    private String readNumberRows(String[] firstRow) throws IOException {
+        int size = firstRow.length;
+        if (!isBoardSize(size)) {
+            throw new IllegalArgumentException("Line " + lineNumber
+                    + " has " + size + " values, which is not the size of a board");
+        }
+        StringBuilder puzzle = new StringBuilder(size * size);
+        String[] row = firstRow;
+        for (int i = 0; i < size; i++) {
+            String line = null;
+            if (i > 0) {
+                line = nextLine();
+                row = line == null ? null : line.split("\\s+");
+            }
+            if (row == null || row.length != size) {
+                pushBack(line);
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + " should be row #" + i + " of a puzzle, with " + size + " values");
+            }
+            for (String token : row) {
+                int value = token.equals(".") ? 0 : Integer.parseInt(token);
+                if (value < 0 || value > size) {
+                    throw new IllegalArgumentException("Line " + lineNumber
+                            + " contains an invalid value: " + token);
+                }
+                puzzle.append(toSymbol(value));
+            }
+        }
+        return puzzle.toString();
+    }
+
+    /**
+     * Checks whether a line of 16 symbols is a whole 4x4 puzzle rather than
+     *   the first row of a 16x16 one: neither it nor the next line, if it is
+     *   a row, has a value above 4. The next line is read again by next()
+     * @param symbols: the 16 symbols
+     * @return boolean
+     */
+    private boolean isSmallPuzzle(String symbols) throws IOException {
+        if (hasValueAbove(symbols, 4)) {
+            return false;
+        }
+        String line = nextLine();
+        pushBack(line);
+        return line == null || line.length() != symbols.length()
+                || !hasValueAbove(line, 4);
+    }
+
+    /**
+     * Checks whether symbols have a value above a limit
+     * @param symbols: the symbols
+     * @param limit: the highest value allowed
+     * @return boolean
+     */
+    private static boolean hasValueAbove(String symbols, int limit) {
+        for (int i = 0; i < symbols.length(); i++) {
+            if (toValue(symbols.charAt(i)) > limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the next line that is not blank or a comment
+     * @return String: the trimmed line, or null at the end of the input
+     */
+    private String nextLine() throws IOException {
+        if (pushedBack != null) {
+            String line = pushedBack;
+            pushedBack = null;
+            return line;
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives back a line read by nextLine, which returns it again
+     * @param line: the line, or null at the end of the input
+     */
+    private void pushBack(String line) {
+        pushedBack = line;
+    }
+
+    /**
+     * Replaces the '.' by 0 and checks that only the symbols of the values of
+     *   the board are left
+     * @param puzzle: the size * size characters of the puzzle
+     * @param size: the width of the board
+     * @return String: the symbols of the puzzle
+     */
+    private String normalize(String puzzle, int size) {
+        char[] symbols = puzzle.toCharArray();
+        for (int i = 0; i < symbols.length; i++) {
+            int value = toValue(symbols[i]);
+            if (value < 0 || value > size) {
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + " contains an invalid cell: " + symbols[i]);
+            }
+            symbols[i] = toSymbol(value);
+        }
+        return new String(symbols);
+    }
+
+    /**
+     * Checks whether a token is the value of a cell in a row of numbers: '.'
+     *   or at most 2 digits, so that a line of symbols followed by a solution
+     *   is not taken for a row
+     * @param token: the token
+     * @return boolean
+     */
+    private static boolean isNumber(String token) {
+        if (token.equals(".")) {
+            return true;
+        }
+        if (token.length() > 2) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return !token.isEmpty();
+    }
+
+    /**
+     * Checks whether a width is the one of a supported board (4, 9, 16, 25)
+     * @param size: the width
+     * @return boolean
+     */
+    private static boolean isBoardSize(int size) {
+        int boxSize = (int) Math.round(Math.sqrt(size));
+        return boxSize >= 2 && boxSize <= Geometry.MAX_BOX_SIZE && boxSize * boxSize == size;
+    }
+
+    /**
+     * Returns the symbol of a value: 0 for an empty cell, 1 to 9, then A for
+     *   10, B for 11...
+     * @param value: the value, from 0 to 35
+     * @return char
+     */
+    public static char toSymbol(int value) {
+        return (char) (value < 10 ? '0' + value : 'A' + value - 10);
+    }
+
+    /**
+     * Returns the value of a symbol, '.' being an empty cell. Letters can be
+     *   lower case
+     * @param symbol: the symbol
+     * @return int: the value, 0 for an empty cell, -1 if it is not a symbol
+     */
+    public static int toValue(char symbol) {
+        if (symbol == '.') {
+            return 0;
+        }
+        if (symbol >= '0' && symbol <= '9') {
+            return symbol - '0';
+        }
+        char upper = Character.toUpperCase(symbol);
+        if (upper >= 'A' && upper <= 'Z') {
+            return upper - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Builds a grid from the symbols of a puzzle. The size of the board is
+     *   found from the number of symbols
+     * @param puzzle: the symbols, row after row, 0 for an empty cell
+     * @return Grid: the grid, with its markups initiated
+     */
+    public static Grid toGrid(String puzzle) {
+        int size = (int) Math.round(Math.sqrt(puzzle.length()));
+        Cell[][] cells = new Cell[size][size];
+        for (int i = 0; i < size * size; i++) {
+            cells[i / size][i % size] = new Cell(i / size, i % size, toValue(puzzle.charAt(i)));
+        }
+        return new Grid(cells);
+    }
+}
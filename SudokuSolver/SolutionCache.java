@@ -0,0 +1,219 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the results of the last puzzles solved, so that a puzzle
+ *   seen again, or one of its symmetric variants (rotated, reflected, with
+ *   its bands or stacks swapped, or its values relabeled), is not solved
+ *   again. The results are stored under the canonical form of the puzzle
+ *   (see CanonicalForm), and mapped back to the variant asked for.
+ * Computing a canonical form costs a fraction of a solve, so each puzzle
+ *   is first looked up as it is: the result of a puzzle solved or looked up
+ *   before is also stored under the puzzle itself, with its solution in the
+ *   terms of the puzzle, and a puzzle seen again is answered without its
+ *   canonical form. These exact entries are kept in a map of their own, so
+ *   they do not take the room of the canonical forms.
+ * At most capacity canonical forms are kept, and as many exact entries:
+ *   the least recently used one is removed to make room. The capacity, the
+ *   size and the evictions count the canonical forms, one per puzzle.
+ *   The cache can be used by several threads at once; the canonical forms
+ *   are computed outside of its lock, with one CanonicalForm per thread.
+ * @author morel
+ */
+public class SolutionCache {
+
+    private final int capacity;
+
+    //The results by canonical form, from the least to the most recently used
+    private final LinkedHashMap<Key, Entry> entries;
+
+    //The results by the values of the puzzles looked up, in their terms,
+    //  from the least to the most recently used
+    private final LinkedHashMap<Key, Entry> exactEntries;
+
+    //The canonical form of the current thread, for the last size it used
+    private final ThreadLocal<CanonicalForm> forms = new ThreadLocal<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public SolutionCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > SolutionCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        exactEntries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > SolutionCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Solves the grid, or takes its result from the cache. As with
+     *   Solver.solve, if the grid has a solution, it is left with the values
+     *   of that solution
+     * @param grid: the grid to solve, whose cells have their values
+     * @param solver: the solver used on a miss, which must only be used by
+     *    the current thread
+     * @return SolveResult: the result; it has no stats when it comes from
+     *    the cache
+     */
+    public SolveResult solve(Grid grid, Solver solver) {
+        Geometry geometry = grid.geometry;
+        int[] puzzle = new int[geometry.cellCount];
+        for (int index = 0; index < puzzle.length; index++) {
+            puzzle[index] = grid.getValue(index);
+        }
+        Key exactKey = new Key(puzzle);
+        Entry entry;
+        synchronized (this) {
+            entry = exactEntries.get(exactKey);
+            if (entry != null) {
+                hits++;
+            }
+        }
+        if (entry != null) {
+            return toResult(entry, entry.solution == null ? null : entry.solution.clone(), grid);
+        }
+
+        CanonicalForm form = forms.get();
+        if (form == null || form.geometry != geometry) {
+            form = new CanonicalForm(geometry);
+            forms.set(form);
+        }
+        form.compute(puzzle);
+        //Only copied if it is stored
+        Key canonicalKey = new Key(form.getValues());
+
+        synchronized (this) {
+            entry = entries.get(canonicalKey);
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (entry != null) {
+            int[] solution = null;
+            if (entry.solution != null) {
+                solution = new int[puzzle.length];
+                form.fromCanonical(entry.solution, solution);
+            }
+            synchronized (this) {
+                exactEntries.put(exactKey, new Entry(entry.status,
+                        solution == null ? null : solution.clone(), entry.solutionsFound));
+            }
+            return toResult(entry, solution, grid);
+        }
+
+        SolveResult result = solver.solve(grid);
+        int[] solution = null;
+        int[] canonicalSolution = null;
+        if (result.getSolution() != null) {
+            solution = result.getSolution().clone();
+            canonicalSolution = new int[puzzle.length];
+            form.toCanonical(solution, canonicalSolution);
+        }
+        synchronized (this) {
+            entries.put(new Key(canonicalKey.values.clone()), new Entry(result.getStatus(),
+                    canonicalSolution, result.getSolutionsFound()));
+            exactEntries.put(exactKey, new Entry(result.getStatus(), solution,
+                    result.getSolutionsFound()));
+        }
+        return result;
+    }
+
+    /**
+     * Builds the result of a puzzle found in the cache, and gives its
+     *   solution to the grid
+     * @param entry: the entry of the puzzle
+     * @param solution: the solution, in the terms of the puzzle, or null
+     * @param grid: the grid of the puzzle
+     * @return SolveResult: the result, with no stats
+     */
+    private static SolveResult toResult(Entry entry, int[] solution, Grid grid) {
+        if (solution == null) {
+            return new SolveResult(entry.status, null, 0);
+        }
+        grid.setValues(solution);
+        return new SolveResult(entry.status, solution, entry.solutionsFound);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The values of a puzzle, as a key of the map
+     */
+    private static final class Key {
+
+        final int[] values;
+        final int hash;
+
+        Key(int[] values) {
+            this.values = values;
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).hash == hash
+                    && Arrays.equals(((Key) other).values, values);
+        }
+    }
+
+    /**
+     * The result of a puzzle, in the terms of its canonical form, or of the
+     *   puzzle itself for its exact key
+     */
+    private static class Entry {
+
+        final SolveResult.Status status;
+        final int[] solution;
+        final int solutionsFound;
+
+        Entry(SolveResult.Status status, int[] solution, int solutionsFound) {
+            this.status = status;
+            this.solution = solution;
+            this.solutionsFound = solutionsFound;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package SudokuSolver;
+
+/**
+ * This class defines the outcome of solving a grid
+ * @author morel
+ */
+public class SolveResult {
+
+    public enum Status {
+        SOLVED,     //The grid has exactly one solution
+        UNSOLVABLE, //The grid has no solution
+        MULTIPLE    //The grid has more than one solution
+    }
+
+    Status status;
+
+    //Values of the first solution found, row after row, or null if the grid
+    //  has no solution
+    int[] solution;
+
+    //Number of solutions found before the search stopped
+    int solutionsFound;
+
+    //Work done by the solve, or null if the solver does not collect stats
+    SolverStats stats;
+
+    SolveResult(Status status, int[] solution, int solutionsFound) {
+        this.status = status;
+        this.solution = solution;
+        this.solutionsFound = solutionsFound;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int[] getSolution() {
+        return solution;
+    }
+
+    public int getSolutionsFound() {
+        return solutionsFound;
+    }
+
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the solution as a single line of digits, row after row. The
+     *   values above 9 are written with the symbols of PuzzleReader.toSymbol
+     * @return String: the solution, or null if the grid has no solution
+     */
+    public String getSolutionString() {
+        if (solution == null) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(solution.length);
+        for (int value : solution) {
+            result.append(PuzzleReader.toSymbol(value));
+        }
+        return result.toString();
+    }
+}
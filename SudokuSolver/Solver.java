@@ -0,0 +1,430 @@
+package SudokuSolver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class solves a grid completely. The markups are propagated with
+ *   Grid.markup(), and when they are stuck, the solver guesses a value for the
+ *   cell with the fewest possible values, and goes back on its guess if it
+ *   leads to a contradiction (depth-first search). Each guess is propagated
+ *   with Grid.assign(), which only visits the neighbors of the cells that
+ *   get a value.
+ * Instead of copying the cells before each guess, the values and markups of
+ *   the grid are saved in a preallocated array per search level. The arrays
+ *   are kept between solves, so a solver can be reused for many grids, but
+ *   it must not be used by several threads at once.
+ * When collectStats is set, each result carries the SolverStats of its solve.
+ * The DANCING_LINKS engine solves the same grids as an exact cover problem
+ *   instead, which is faster to go through many solutions, behind the same
+ *   solve().
+ * countSolutions() runs the same search without keeping the solution, and
+ *   stops as soon as it has found enough of them: a generator can check that
+ *   a puzzle has a unique solution with countSolutions(grid, 2) == 1.
+ * ParallelSolver splits the same search between the threads of a pool,
+ *   with one solver per thread.
+ * @author morel
+ */
+public class Solver {
+
+    /**
+     * The ways a grid can be solved
+     */
+    public enum Engine {
+        PROPAGATION,    //Markups, deduction rules and depth-first search
+        DANCING_LINKS   //Exact cover with Dancing Links (Algorithm X)
+    }
+
+    //The solver stops once this number of solutions is found. Two is enough
+    //  to know whether the solution is unique
+    static final int SOLUTION_LIMIT = 2;
+
+    //Saved states of the grid, one per search level. Each level solves at
+    //  least one cell, so there are at most as many levels as cells
+    private int[][] states;
+
+    //State of the grid when the first solution was found
+    private int[] firstSolution;
+
+    //State of the grid before countSolutions, to give it back unchanged
+    private int[] startState;
+
+    private int solutionsFound;
+
+    //The search stops once this number of solutions is found
+    private int solutionLimit;
+
+    //When the search is one branch of a ParallelSolver search: the solutions
+    //  found by all the branches, and where the first one is saved. Null
+    //  otherwise
+    private AtomicInteger sharedSolutions;
+    private int[] sharedFirstSolution;
+
+    //Whether the deduction rules (hidden singles, preemptive sets...) are
+    //  used after each guess. They remove numbers that markup() cannot, at
+    //  the cost of looking through all the units
+    public boolean usePreemptiveSets = true;
+
+    //The deduction rules used after each guess, cheapest first
+    public DeductionPipeline deductions = DeductionPipeline.standard();
+
+    //The engine used by solve()
+    public Engine engine = Engine.PROPAGATION;
+
+    //The exact cover matrix of the DANCING_LINKS engine, built on first use
+    private DancingLinks dancingLinks;
+
+    //Whether each result gets the stats of its solve. Without them, the
+    //  solver does not read the clock nor allocate the stats
+    public boolean collectStats = false;
+
+    //Work of the current solve, copied to its stats
+    private long guesses;
+    private long backtracks;
+    private long deductionNanos;
+
+    //Deepest level of guesses reached by the current search
+    private int maxDepth;
+
+    /**
+     * Solves the grid. If it has a solution, the grid is left with the values
+     *   of the first solution found
+     * @param grid: the grid to solve
+     * @return SolveResult: whether the grid has zero, one or several
+     *    solutions, along with the first solution found
+     */
+    public SolveResult solve(Grid grid) {
+        SolverStats stats = collectStats ? new SolverStats() : null;
+        run(grid, stats);
+
+        SolveResult result;
+        if (solutionsFound == 0) {
+            result = new SolveResult(SolveResult.Status.UNSOLVABLE, null, 0);
+        } else {
+            int[] solution = new int[grid.geometry.cellCount];
+            result = new SolveResult(copySolution(grid, solution), solution, solutionsFound);
+        }
+        result.stats = stats;
+        return result;
+    }
+
+    /**
+     * Solves the grid as solve(grid) does, but copies the first solution
+     *   into an array instead of returning a result, so that once the solver
+     *   has its arrays for the size of the grid, nothing is allocated. The
+     *   stats are not collected
+     * @param grid: the grid to solve
+     * @param solution: gets the values of the first solution found, row
+     *    after row. Left unchanged if the grid has no solution
+     * @return SolveResult.Status: whether the grid has zero, one or several
+     *    solutions
+     */
+    public SolveResult.Status solve(Grid grid, int[] solution) {
+        if (solution.length != grid.geometry.cellCount) {
+            throw new IllegalArgumentException("The grid has " + grid.geometry.cellCount
+                    + " cells, not " + solution.length);
+        }
+        boolean stats = collectStats;
+        collectStats = false;
+        run(grid, null);
+        collectStats = stats;
+        if (solutionsFound == 0) {
+            return SolveResult.Status.UNSOLVABLE;
+        }
+        return copySolution(grid, solution);
+    }
+
+    /**
+     * Runs the search of solve()
+     * @param grid: the grid to solve
+     * @param stats: gets the work of the solve, or null
+     */
+    private void run(Grid grid, SolverStats stats) {
+        allocate(grid);
+        solutionLimit = SOLUTION_LIMIT;
+        solutionsFound = 0;
+        guesses = 0;
+        backtracks = 0;
+        deductionNanos = 0;
+        maxDepth = 0;
+
+        long start = 0;
+        if (stats != null) {
+            stats.addGridCounters(grid, -1);
+            start = System.nanoTime();
+        }
+
+        long markupEnd;
+        if (engine == Engine.DANCING_LINKS) {
+            markupEnd = start;
+            solveWithDancingLinks(grid);
+        } else {
+            grid.markup();
+            markupEnd = stats != null ? System.nanoTime() : 0;
+            if (!grid.hasContradiction() && propagate(grid, 0)) {
+                search(grid, 0);
+            }
+        }
+
+        if (stats != null) {
+            stats.solves = 1;
+            stats.markupNanos = markupEnd - start;
+            stats.deductionNanos = deductionNanos;
+            stats.searchNanos = System.nanoTime() - markupEnd - deductionNanos;
+            stats.guesses = guesses;
+            stats.backtracks = backtracks;
+            stats.addGridCounters(grid, 1);
+        }
+    }
+
+    /**
+     * Gives the grid the values of the first solution found, and copies them
+     * @param grid: the grid that was solved
+     * @param solution: gets the values, row after row
+     * @return SolveResult.Status: SOLVED, or MULTIPLE if several solutions
+     *    were found
+     */
+    private SolveResult.Status copySolution(Grid grid, int[] solution) {
+        grid.restoreState(firstSolution);
+        for (int index = 0; index < solution.length; index++) {
+            solution[index] = grid.getValue(index);
+        }
+        return solutionsFound == 1 ? SolveResult.Status.SOLVED : SolveResult.Status.MULTIPLE;
+    }
+
+    /**
+     * Counts the solutions of the grid, up to a limit. The search stops as
+     *   soon as the limit is reached, so with a limit of 2 it only tells
+     *   whether the grid has zero, one or several solutions, which is all a
+     *   generator needs to know. The grid is left as it was given, and
+     *   nothing is allocated unless the grid is of a new size.
+     * The stats are not collected
+     * @param grid: the grid whose solutions are counted
+     * @param limit: the number of solutions after which the search stops, at
+     *    least 1
+     * @return int: the number of solutions, at most limit
+     */
+    public int countSolutions(Grid grid, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit must be at least 1: " + limit);
+        }
+        allocate(grid);
+        grid.saveState(startState);
+        solutionLimit = limit;
+        solutionsFound = 0;
+        guesses = 0;
+        backtracks = 0;
+        deductionNanos = 0;
+        maxDepth = 0;
+
+        boolean stats = collectStats;
+        collectStats = false;
+        if (engine == Engine.DANCING_LINKS) {
+            solveWithDancingLinks(grid);
+        } else {
+            grid.markup();
+            if (!grid.hasContradiction() && propagate(grid, 0)) {
+                search(grid, 0);
+            }
+        }
+        collectStats = stats;
+
+        grid.restoreState(startState);
+        return solutionsFound;
+    }
+
+    /**
+     * Checks whether the grid has exactly one solution. The grid is left as
+     *   it was given
+     * @param grid: the grid to check
+     * @return boolean
+     */
+    public boolean hasUniqueSolution(Grid grid) {
+        return countSolutions(grid, 2) == 1;
+    }
+
+    /**
+     * Searches one branch of a parallel search. The grid is expected to be
+     *   propagated already, with no contradiction. The search also stops once
+     *   the branches have found limit solutions between them, and the first
+     *   solution found by any branch is saved in firstSolution
+     * @param grid: the grid of the branch, whose markups are up to date
+     * @param depth: the number of guesses made before the branch
+     * @param limit: the number of solutions after which the search stops
+     * @param solutions: the number of solutions found by all the branches
+     * @param firstSolution: gets the state of the first solution found
+     * @return int: the number of solutions found in this branch
+     */
+    int searchBranch(Grid grid, int depth, int limit, AtomicInteger solutions,
+            int[] firstSolution) {
+        allocate(grid);
+        solutionLimit = limit;
+        solutionsFound = 0;
+        guesses = 0;
+        backtracks = 0;
+        deductionNanos = 0;
+        sharedSolutions = solutions;
+        sharedFirstSolution = firstSolution;
+        try {
+            search(grid, depth);
+        } finally {
+            sharedSolutions = null;
+            sharedFirstSolution = null;
+        }
+        return solutionsFound;
+    }
+
+    long getGuesses() {
+        return guesses;
+    }
+
+    long getBacktracks() {
+        return backtracks;
+    }
+
+    /**
+     * Returns the deepest level of guesses reached by the last search of the
+     *   PROPAGATION engine: 0 if the deduction rules solved the grid alone
+     * @return int
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Checks whether enough solutions were found, by this search or, in a
+     *   parallel search, by all the branches
+     * @return boolean
+     */
+    private boolean isDone() {
+        return solutionsFound >= solutionLimit
+                || (sharedSolutions != null && sharedSolutions.get() >= solutionLimit);
+    }
+
+    /**
+     * Allocates the saved states for the size of the grid. They are only
+     *   allocated again for a grid of another size
+     * @param grid: the grid about to be solved
+     */
+    private void allocate(Grid grid) {
+        if (states == null || firstSolution.length != grid.getStateSize()) {
+            states = new int[grid.geometry.cellCount + 1][grid.getStateSize()];
+            firstSolution = new int[grid.getStateSize()];
+            startState = new int[grid.getStateSize()];
+        }
+    }
+
+    /**
+     * Solves the grid with the exact cover matrix of its geometry. The first
+     *   solution is saved as a state whose markups are all empty
+     * @param grid: the grid being solved
+     */
+    private void solveWithDancingLinks(Grid grid) {
+        if (dancingLinks == null || dancingLinks.geometry != grid.geometry) {
+            dancingLinks = new DancingLinks(grid.geometry);
+        }
+        solutionsFound = dancingLinks.solve(grid, solutionLimit, firstSolution);
+        guesses = dancingLinks.guesses;
+        backtracks = dancingLinks.backtracks;
+    }
+
+    /**
+     * Tries every possible value of the cell with the fewest possible values.
+     *   The markups of the grid must be up to date, with no contradiction:
+     *   assign() and the deduction rules report the contradictions they
+     *   make, so only the given grid is checked, once, with
+     *   hasContradiction()
+     * @param grid: the grid being solved
+     * @param depth: the number of guesses made so far
+     */
+    private void search(Grid grid, int depth) {
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+
+        int cell = getMostConstrainedCell(grid);
+        if (cell < 0) {
+            //No cell left to fill: the grid is solved
+            solutionsFound++;
+            if (sharedSolutions == null) {
+                if (solutionsFound == 1) {
+                    grid.saveState(firstSolution);
+                }
+            } else if (sharedSolutions.incrementAndGet() == 1) {
+                grid.saveState(sharedFirstSolution);
+            }
+            return;
+        }
+
+        int[] state = states[depth];
+        grid.saveState(state);
+        int candidates = grid.getMarkup(cell);
+        for (int value = CandidateSet.first(candidates); value != 0;
+                value = CandidateSet.next(candidates, value)) {
+            guesses++;
+            if (grid.assign(cell, value) && propagate(grid, depth + 1)) {
+                search(grid, depth + 1);
+                if (isDone()) {
+                    return;
+                }
+            }
+            grid.restoreState(state);
+            backtracks++;
+        }
+    }
+
+    /**
+     * Runs the deduction rules of a level of the search on the grid, if
+     *   enabled
+     * @param grid: the grid being solved
+     * @param depth: the number of guesses made so far
+     * @return boolean: false if the grid is in a contradictory state
+     */
+    boolean propagate(Grid grid, int depth) {
+        if (!usePreemptiveSets) {
+            return true;
+        }
+        long start = collectStats ? System.nanoTime() : 0;
+        boolean consistent = deductions.run(grid, depth);
+        if (collectStats) {
+            deductionNanos += System.nanoTime() - start;
+        }
+        return consistent;
+    }
+
+    /**
+     * Finds the unsolved cell with the smallest markup (minimum remaining
+     *   values), since it is the guess the most likely to be right. Among
+     *   those, the cell with the most unsolved neighbors is chosen, since
+     *   its value removes the most numbers: without it, a bad first guess
+     *   on a 25x25 grid can take minutes to be undone
+     * @param grid: the grid being solved
+     * @return int: the index of the cell to guess, or -1 if all the cells
+     *    are solved
+     */
+    int getMostConstrainedCell(Grid grid) {
+        Geometry geometry = grid.geometry;
+        int best = -1;
+        int bestSize = Integer.MAX_VALUE;
+        int bestDegree = -1;
+        for (int index = 0; index < geometry.cellCount; index++) {
+            if (grid.getValue(index) == 0) {
+                int size = CandidateSet.size(grid.getMarkup(index));
+                if (size > bestSize) {
+                    continue;
+                }
+                int degree = 0;
+                for (int peer : geometry.peers[index]) {
+                    if (grid.getValue(peer) == 0) {
+                        degree++;
+                    }
+                }
+                if (size < bestSize || degree > bestDegree) {
+                    best = index;
+                    bestSize = size;
+                    bestDegree = degree;
+                }
+            }
+        }
+        return best;
+    }
+}
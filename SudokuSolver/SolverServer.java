@@ -0,0 +1,603 @@
+package SudokuSolver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class is a local HTTP service that solves puzzles, so that a client
+ *   does not start a JVM for each puzzle. It runs on the HTTP server of the
+ *   JDK, and answers:
+ *   - POST /solve: solves the puzzles of the body. The body is either text,
+ *     with one or more puzzles in any format read by PuzzleReader, or JSON:
+ *     a string, an array of strings, or an object with a "puzzle" or a
+ *     "puzzles" field. Text is answered with the lines of BatchSolver, and
+ *     JSON with one result per puzzle: its status, its solution, and the
+ *     time and the work it took
+ *   - GET /stats: the requests and puzzles served so far, their latencies,
+ *     the sizes of the batches and the cache, as text
+ *   The numbers are written the same way whatever the locale of the JVM.
+ * The requests are handled on virtual threads when the JVM has them (Java 21
+ *   and later), and on a pool of platform threads otherwise, since they only
+ *   parse, wait and write. Their puzzles are put in one bounded queue, which
+ *   a fixed pool of solver threads empties by micro-batches of up to
+ *   maxBatch puzzles: a solver thread is woken once per batch instead of
+ *   once per puzzle, and keeps its Solver from one puzzle to the next. When
+ *   the queue is full, the requests wait for room.
+ * The JVM should run with -Dsun.net.httpserver.nodelay=true, which
+ *   Sudoku --serve sets: without TCP_NODELAY, the small answers wait for the
+ *   delayed acknowledgement of the client, about 40 ms per request on a
+ *   kept-alive connection. The property is global to the JVM and read once,
+ *   by the first HTTP server created, so the server leaves it to the
+ *   program that launches it.
+ * @author morel
+ */
+public class SolverServer {
+
+    //Largest body accepted, in bytes
+    public static final int MAX_BODY_LENGTH = 16 << 20;
+
+    private final HttpServer server;
+    private final int solverThreads;
+
+    //Maximum number of puzzles taken from the queue at once by a solver
+    private final int maxBatch;
+
+    //The puzzles waiting for a solver
+    private final BlockingQueue<Job> queue;
+
+    private final ExecutorService handlers;
+    private final ArrayList<Worker> workers = new ArrayList<>();
+
+    //The results of the puzzles already solved, or null to solve them all.
+    //  It must be set before start
+    public SolutionCache cache;
+
+    private long requests;
+    private long badRequests;
+
+    /**
+     * Creates a server listening on the loopback interface
+     * @param port: the port, or 0 for any free port (see getPort)
+     * @param solverThreads: the number of threads solving the puzzles
+     * @param maxBatch: the maximum number of puzzles solved per wake-up of
+     *    a solver thread
+     * @throws IOException: if the port cannot be opened
+     */
+    public SolverServer(int port, int solverThreads, int maxBatch) throws IOException {
+        if (solverThreads < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("The solver threads and the batch size must be at least 1");
+        }
+        this.solverThreads = solverThreads;
+        this.maxBatch = maxBatch;
+        queue = new ArrayBlockingQueue<>(solverThreads * maxBatch * 16);
+        handlers = newHandlerExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(handlers);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task, or a pool of
+     *   platform threads if the JVM has no virtual threads. The method is
+     *   looked up at run time, so the class also compiles and runs on the
+     *   JDKs before 21
+     * @return ExecutorService
+     */
+    private static ExecutorService newHandlerExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "solver-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts the solver threads, then the server
+     */
+    public void start() {
+        for (int i = 0; i < solverThreads; i++) {
+            Worker worker = new Worker();
+            Thread thread = new Thread(worker, "solver-" + i);
+            worker.thread = thread;
+            workers.add(worker);
+            thread.start();
+        }
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting at most delay seconds for the requests being
+     *   handled, then the solver threads
+     * @param delay: the number of seconds to wait
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        handlers.shutdownNow();
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on
+     * @return int
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Solves the puzzles of a request and answers their results
+     * @param exchange: the request and its response
+     */
+    private void handleSolve(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, "text/plain", "Use POST with the puzzles in the body\n");
+                return;
+            }
+            String body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                send(exchange, 413, "text/plain", "The body is longer than " + MAX_BODY_LENGTH + " bytes\n");
+                return;
+            }
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            boolean json = (contentType != null && contentType.contains("json")) || isJson(body);
+
+            String[] puzzles;
+            try {
+                puzzles = json ? readJsonPuzzles(body) : readTextPuzzles(body);
+            } catch (IllegalArgumentException e) {
+                synchronized (this) {
+                    badRequests++;
+                }
+                send(exchange, 400, "text/plain", e.getMessage() + "\n");
+                return;
+            }
+
+            Request request = new Request(puzzles);
+            try {
+                for (int i = 0; i < puzzles.length; i++) {
+                    queue.put(new Job(request, i));
+                }
+                request.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, "text/plain", "The server is stopping\n");
+                return;
+            }
+            synchronized (this) {
+                requests++;
+            }
+            if (json) {
+                send(exchange, 200, "application/json", toJson(request.results));
+            } else {
+                send(exchange, 200, "text/plain", toText(request.results));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Answers the counters of the server
+     * @param exchange: the request and its response
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            readBody(exchange.getRequestBody());
+            LatencyHistogram latencies = new LatencyHistogram();
+            long batches = 0;
+            long errors = 0;
+            for (Worker worker : workers) {
+                synchronized (worker) {
+                    latencies.add(worker.latencies);
+                    batches += worker.batches;
+                    errors += worker.errors;
+                }
+            }
+            long puzzles = latencies.getCount();
+            StringBuilder text = new StringBuilder();
+            synchronized (this) {
+                text.append(String.format(Locale.ROOT, "%d requests (%d rejected), %d puzzles (%d failed)"
+                        + " in %d batches on %d threads, %.1f puzzles per batch\n",
+                        requests, badRequests, puzzles, errors, batches, solverThreads,
+                        batches == 0 ? 0.0 : (double) puzzles / batches));
+            }
+            text.append(String.format(Locale.ROOT, "Latency per puzzle: mean %.1f us, p50 %.1f us,"
+                    + " p99 %.1f us, max %.1f us\n",
+                    latencies.getMean() / 1000, latencies.getPercentile(0.50) / 1000.0,
+                    latencies.getPercentile(0.99) / 1000.0, latencies.getMax() / 1000.0));
+            if (cache != null) {
+                text.append(String.format(Locale.ROOT, "Cache: %d hits, %d misses, %d evictions, %d of %d entries\n",
+                        cache.getHits(), cache.getMisses(), cache.getEvictions(),
+                        cache.size(), cache.getCapacity()));
+            }
+            send(exchange, 200, "text/plain", text.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads the whole body of a request
+     * @param input: the body
+     * @return String: the body, or null if it is longer than MAX_BODY_LENGTH
+     */
+    private static String readBody(InputStream input) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = input.read(buffer)) >= 0) {
+            if (body.size() + length > MAX_BODY_LENGTH) {
+                //The rest is read anyway, so the connection can be reused
+                while (input.read(buffer) >= 0) {
+                }
+                return null;
+            }
+            body.write(buffer, 0, length);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int code, String contentType, String text)
+            throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Checks whether a body is JSON, from its first character
+     * @param body: the body
+     * @return boolean
+     */
+    private static boolean isJson(String body) {
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '{' || c == '[' || c == '"';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads all the puzzles of a text body
+     * @param body: the puzzles, in any format read by PuzzleReader
+     * @return String[]: the symbols of the puzzles
+     * @throws IllegalArgumentException: if there is no puzzle, or if a line
+     *    is not part of a puzzle
+     */
+    static String[] readTextPuzzles(String body) {
+        PuzzleReader reader = new PuzzleReader(new BufferedReader(new StringReader(body)));
+        ArrayList<String> puzzles = new ArrayList<>();
+        try {
+            String puzzle;
+            while ((puzzle = reader.next()) != null) {
+                puzzles.add(puzzle);
+            }
+        } catch (IOException e) {
+            //A StringReader does not throw
+            throw new IllegalStateException(e);
+        }
+        if (puzzles.isEmpty()) {
+            throw new IllegalArgumentException("The body has no puzzle");
+        }
+        return puzzles.toArray(new String[puzzles.size()]);
+    }
+
+    /**
+     * Reads the puzzles of a JSON body. Only its strings are read: the ones
+     *   outside of any object, and the values of the fields "puzzle" and
+     *   "puzzles". Each of them is a puzzle in any format read by
+     *   PuzzleReader, so a puzzle can also be written one row per line
+     * @param body: the JSON body
+     * @return String[]: the symbols of the puzzles
+     * @throws IllegalArgumentException: if the body has no puzzle, if a
+     *    string is not closed, or if a puzzle cannot be read
+     */
+    static String[] readJsonPuzzles(String body) {
+        ArrayList<String> puzzles = new ArrayList<>();
+        StringBuilder string = new StringBuilder();
+
+        //The name of the field of each object being read, null outside of
+        //  any object
+        ArrayList<String> fields = new ArrayList<>();
+        String field = null;
+        int i = 0;
+        while (i < body.length()) {
+            char c = body.charAt(i++);
+            if (c == '{') {
+                fields.add(field);
+                field = "";
+            } else if (c == '}') {
+                if (fields.isEmpty()) {
+                    throw new IllegalArgumentException("Unexpected } at " + (i - 1));
+                }
+                field = fields.remove(fields.size() - 1);
+            } else if (c == '"') {
+                string.setLength(0);
+                i = readJsonString(body, i, string);
+                int next = i;
+                while (next < body.length() && Character.isWhitespace(body.charAt(next))) {
+                    next++;
+                }
+                if (next < body.length() && body.charAt(next) == ':') {
+                    field = string.toString();
+                    i = next + 1;
+                } else if (field == null || field.equals("puzzle") || field.equals("puzzles")) {
+                    String[] read = readTextPuzzles(string.toString());
+                    for (String puzzle : read) {
+                        puzzles.add(puzzle);
+                    }
+                }
+            }
+        }
+        if (puzzles.isEmpty()) {
+            throw new IllegalArgumentException("The body has no puzzle");
+        }
+        return puzzles.toArray(new String[puzzles.size()]);
+    }
+
+    /**
+     * Reads a JSON string, whose opening quote is already read
+     * @param body: the JSON body
+     * @param start: the index of the first character of the string
+     * @param string: gets the characters of the string, unescaped
+     * @return int: the index after the closing quote
+     */
+    private static int readJsonString(String body, int start, StringBuilder string) {
+        int i = start;
+        while (i < body.length()) {
+            char c = body.charAt(i++);
+            if (c == '"') {
+                return i;
+            }
+            if (c != '\\') {
+                string.append(c);
+                continue;
+            }
+            if (i == body.length()) {
+                break;
+            }
+            char escaped = body.charAt(i++);
+            switch (escaped) {
+                case 'n':
+                    string.append('\n');
+                    break;
+                case 'r':
+                    string.append('\r');
+                    break;
+                case 't':
+                    string.append('\t');
+                    break;
+                case 'b':
+                    string.append('\b');
+                    break;
+                case 'f':
+                    string.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 > body.length()) {
+                        throw new IllegalArgumentException("Invalid escape at " + (i - 2));
+                    }
+                    try {
+                        string.append((char) Integer.parseInt(body.substring(i, i + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid escape at " + (i - 2));
+                    }
+                    i += 4;
+                    break;
+                default:
+                    string.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("The string at " + (start - 1) + " is not closed");
+    }
+
+    /**
+     * Writes the results as the lines of BatchSolver
+     * @param results: the results of the puzzles of a request
+     * @return String
+     */
+    private static String toText(Result[] results) {
+        StringBuilder text = new StringBuilder();
+        for (Result result : results) {
+            if (result.error != null) {
+                text.append("error ").append(result.error);
+            } else if (result.solution.getStatus() == SolveResult.Status.UNSOLVABLE) {
+                text.append("unsolvable");
+            } else {
+                text.append(result.solution.getSolutionString());
+                if (result.solution.getStatus() == SolveResult.Status.MULTIPLE) {
+                    text.append(" multiple");
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes the results as a JSON object, with one element per puzzle in
+     *   "results". The work of a puzzle taken from the cache is not known,
+     *   so it has "cached": true instead
+     * @param results: the results of the puzzles of a request
+     * @return String
+     */
+    private static String toJson(Result[] results) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"results\":[");
+        for (int i = 0; i < results.length; i++) {
+            Result result = results[i];
+            if (i > 0) {
+                json.append(',');
+            }
+            if (result.error != null) {
+                json.append("{\"status\":\"ERROR\",\"error\":\"");
+                for (int k = 0; k < result.error.length(); k++) {
+                    char c = result.error.charAt(k);
+                    if (c == '"' || c == '\\') {
+                        json.append('\\').append(c);
+                    } else if (c >= ' ') {
+                        json.append(c);
+                    }
+                }
+                json.append("\"}");
+                continue;
+            }
+            SolveResult solution = result.solution;
+            json.append("{\"status\":\"").append(solution.getStatus()).append('"');
+            if (solution.getSolution() != null) {
+                json.append(",\"solution\":\"").append(solution.getSolutionString()).append('"');
+            }
+            json.append(",\"solutionsFound\":").append(solution.getSolutionsFound());
+            json.append(",\"micros\":")
+                    .append(String.format(Locale.ROOT, "%.1f", result.nanos / 1000.0));
+            SolverStats stats = solution.getStats();
+            if (stats == null) {
+                json.append(",\"cached\":true");
+            } else {
+                json.append(",\"guesses\":").append(stats.getGuesses());
+                json.append(",\"backtracks\":").append(stats.getBacktracks());
+                json.append(",\"candidatesEliminated\":").append(stats.getCandidatesEliminated());
+            }
+            json.append('}');
+        }
+        json.append("]}\n");
+        return json.toString();
+    }
+
+    /**
+     * The puzzles of one request, and their results, filled by the solvers
+     */
+    private static class Request {
+
+        final String[] puzzles;
+        final Result[] results;
+
+        //Counted down by the solvers, once per puzzle
+        final CountDownLatch done;
+
+        Request(String[] puzzles) {
+            this.puzzles = puzzles;
+            results = new Result[puzzles.length];
+            done = new CountDownLatch(puzzles.length);
+        }
+    }
+
+    /**
+     * One puzzle of a request, waiting for a solver
+     */
+    private static class Job {
+
+        final Request request;
+        final int index;
+
+        Job(Request request, int index) {
+            this.request = request;
+            this.index = index;
+        }
+    }
+
+    /**
+     * The result of a puzzle, or the error that prevented solving it
+     */
+    private static class Result {
+
+        final SolveResult solution;
+        final String error;
+        final long nanos;
+
+        Result(SolveResult solution, String error, long nanos) {
+            this.solution = solution;
+            this.error = error;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * A solver thread: takes the puzzles of the queue by batches and solves
+     *   them. Its counters are read by handleStats under its lock
+     */
+    private class Worker implements Runnable {
+
+        Thread thread;
+        final Solver solver = new Solver();
+        final ArrayList<Job> batch = new ArrayList<>(maxBatch);
+
+        final LatencyHistogram latencies = new LatencyHistogram();
+        long batches;
+        long errors;
+
+        Worker() {
+            solver.collectStats = true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, maxBatch - 1);
+                    for (Job job : batch) {
+                        solve(job);
+                    }
+                    synchronized (this) {
+                        batches++;
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                //The server is stopping
+            }
+        }
+
+        private void solve(Job job) {
+            long start = System.nanoTime();
+            Result result;
+            try {
+                Grid grid = PuzzleReader.toGrid(job.request.puzzles[job.index]);
+                SolveResult solution = cache == null ? solver.solve(grid) : cache.solve(grid, solver);
+                result = new Result(solution, null, System.nanoTime() - start);
+                synchronized (this) {
+                    latencies.record(result.nanos);
+                }
+            } catch (RuntimeException e) {
+                result = new Result(null, String.valueOf(e.getMessage()), System.nanoTime() - start);
+                synchronized (this) {
+                    errors++;
+                }
+            }
+            job.request.results[job.index] = result;
+            job.request.done.countDown();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package SudokuSolver;
+
+import java.io.PrintStream;
+
+/**
+ * This class counts the work done to solve one grid, or many grids once
+ *   added together:
+ *   - markupPasses: the scans of the grid by markup() (one per call with the
+ *     work queue, one per round with the full scan)
+ *   - candidatesEliminated: the numbers removed from markups, by markup(),
+ *     assign() and the preemptive sets
+ *   - peerChecks: the times a markup was checked against an adjacent cell
+ *   - preemptive sets (naked and hidden) found in the rows, columns and 3x3
+ *     grids
+ *   - cellNodesCreated: the nodes of the trees built by the CELL_TREE search
+ *   - guesses: the values tried by the search, and backtracks: the guesses
+ *     that were undone
+ *   - the time spent in each phase: the first markup(), the deduction rules
+ *     (also after each guess), and the rest of the search
+ * The grid always counts its own work in plain fields, which costs about
+ *   nothing, and the solver only copies the difference and reads the clock
+ *   when its stats are enabled. It is not thread-safe: each thread should
+ *   have its own stats, and they can then be merged with add().
+ * @author morel
+ */
+public class SolverStats {
+
+    //Unit types, in the order of the units of the geometry
+    public static final int ROW = 0;
+    public static final int COLUMN = 1;
+    public static final int BOX = 2;
+
+    //Number of grids solved
+    long solves;
+
+    long markupPasses;
+    long candidatesEliminated;
+    long peerChecks;
+    final long[] preemptiveSets = new long[3];
+    long cellNodesCreated;
+    long guesses;
+    long backtracks;
+
+    long markupNanos;
+    long deductionNanos;
+    long searchNanos;
+
+    /**
+     * Adds the counters of a grid to the stats, or subtracts them. The solver
+     *   subtracts them before solving and adds them back after, which leaves
+     *   the work done by the solve
+     * @param grid: the grid being solved
+     * @param sign: 1 to add, -1 to subtract
+     */
+    void addGridCounters(Grid grid, int sign) {
+        markupPasses += sign * grid.markupPasses;
+        candidatesEliminated += sign * grid.candidatesRemoved;
+        peerChecks += sign * grid.peerChecks;
+        for (int type = 0; type < preemptiveSets.length; type++) {
+            preemptiveSets[type] += sign * grid.preemptiveSets[type];
+        }
+        cellNodesCreated += sign * grid.cellNodesCreated;
+    }
+
+    /**
+     * Adds the stats of other solves to these ones
+     * @param other: the other stats
+     */
+    public void add(SolverStats other) {
+        solves += other.solves;
+        markupPasses += other.markupPasses;
+        candidatesEliminated += other.candidatesEliminated;
+        peerChecks += other.peerChecks;
+        for (int type = 0; type < preemptiveSets.length; type++) {
+            preemptiveSets[type] += other.preemptiveSets[type];
+        }
+        cellNodesCreated += other.cellNodesCreated;
+        guesses += other.guesses;
+        backtracks += other.backtracks;
+        markupNanos += other.markupNanos;
+        deductionNanos += other.deductionNanos;
+        searchNanos += other.searchNanos;
+    }
+
+    public long getSolves() {
+        return solves;
+    }
+
+    public long getMarkupPasses() {
+        return markupPasses;
+    }
+
+    public long getCandidatesEliminated() {
+        return candidatesEliminated;
+    }
+
+    public long getPeerChecks() {
+        return peerChecks;
+    }
+
+    /**
+     * Returns the number of preemptive sets found in one type of unit
+     * @param type: ROW, COLUMN or BOX
+     * @return long
+     */
+    public long getPreemptiveSets(int type) {
+        return preemptiveSets[type];
+    }
+
+    public long getCellNodesCreated() {
+        return cellNodesCreated;
+    }
+
+    public long getGuesses() {
+        return guesses;
+    }
+
+    public long getBacktracks() {
+        return backtracks;
+    }
+
+    public long getMarkupNanos() {
+        return markupNanos;
+    }
+
+    public long getDeductionNanos() {
+        return deductionNanos;
+    }
+
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    /**
+     * Prints the counters, and the time per phase in microseconds
+     * @param out: where to print the stats
+     */
+    public void print(PrintStream out) {
+        out.println(String.format("Work: %d markup passes, %d candidates eliminated,"
+                + " %d peer checks, %d guesses, %d backtracks",
+                markupPasses, candidatesEliminated, peerChecks, guesses, backtracks));
+        out.println(String.format("Preemptive sets: %d in rows, %d in columns,"
+                + " %d in 3x3 grids, %d CellNodes created",
+                preemptiveSets[ROW], preemptiveSets[COLUMN], preemptiveSets[BOX],
+                cellNodesCreated));
+        out.println(String.format("Time: markup %.1f us, deductions %.1f us,"
+                + " search %.1f us", markupNanos / 1000.0, deductionNanos / 1000.0,
+                searchNanos / 1000.0));
+    }
+}
@@ -0,0 +1,169 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+
+/**
+ * This class propagates the values of a board unit by unit, for the
+ *   UNIT_MASKS propagation of Grid.markup(): each pass ORs the bits of the
+ *   values of each row, column and box into one mask per unit, removes the
+ *   three masks of its units from the markup of each unsolved cell (AND-NOT),
+ *   and gives its value to each cell left with a single number. The passes
+ *   go on until one changes nothing, which is the fixpoint of the other
+ *   propagations.
+ * A pass reads and writes the packed board (see BoardState) in index order,
+ *   with the same operations on every cell, so it can run on SIMD lanes:
+ *   when the JDK Vector API is available, create returns a
+ *   VectorUnitEliminator, compiled from the vector folder with the
+ *   jdk.incubator.vector module, and run with --add-modules
+ *   jdk.incubator.vector. Without it, or with the system property
+ *   sudoku.scalar set to true, this scalar version is used.
+ * An eliminator keeps its masks between passes, so like the grid that owns
+ *   it, it must only be used by one thread at a time.
+ * @author morel
+ */
+public class UnitEliminator {
+
+    //The class of the vector version, or null if it cannot be used
+    private static final Class<?> VECTOR_CLASS = findVectorClass();
+
+    final Geometry geometry;
+
+    //The bits of the values of each unit
+    final int[] used;
+
+    //The row, column and box unit of each cell
+    final int[] rowUnit;
+    final int[] columnUnit;
+    final int[] boxUnit;
+
+    //Number of values removed from markups by the passes
+    long candidatesRemoved;
+
+    public UnitEliminator(Geometry geometry) {
+        this.geometry = geometry;
+        used = new int[geometry.unitCount];
+        rowUnit = new int[geometry.cellCount];
+        columnUnit = new int[geometry.cellCount];
+        boxUnit = new int[geometry.cellCount];
+        for (int index = 0; index < geometry.cellCount; index++) {
+            rowUnit[index] = geometry.unitOf(index, 0);
+            columnUnit[index] = geometry.unitOf(index, 1);
+            boxUnit[index] = geometry.unitOf(index, 2);
+        }
+    }
+
+    /**
+     * Looks for the vector version. Loading it fails if it was not compiled,
+     *   or if the jdk.incubator.vector module is not in the JVM
+     * @return Class: the class, or null
+     */
+    private static Class<?> findVectorClass() {
+        if (Boolean.getBoolean("sudoku.scalar")) {
+            return null;
+        }
+        try {
+            return Class.forName("SudokuSolver.VectorUnitEliminator");
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the fastest eliminator available: the vector one if it can be
+     *   used, the scalar one otherwise
+     * @param geometry: the shape of the boards
+     * @return UnitEliminator
+     */
+    public static UnitEliminator create(Geometry geometry) {
+        if (VECTOR_CLASS != null) {
+            try {
+                return (UnitEliminator) VECTOR_CLASS.getConstructor(Geometry.class)
+                        .newInstance(geometry);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                //Use the scalar version
+            }
+        }
+        return new UnitEliminator(geometry);
+    }
+
+    /**
+     * Checks whether create returns the vector version
+     * @return boolean
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_CLASS != null;
+    }
+
+    /**
+     * Checks whether this eliminator runs on SIMD lanes
+     * @return boolean
+     */
+    public boolean isVector() {
+        return false;
+    }
+
+    public long getCandidatesRemoved() {
+        return candidatesRemoved;
+    }
+
+    /**
+     * Runs passes until one changes nothing
+     * @param board: the packed cells of the board (see BoardState)
+     * @return int: the number of passes, 1 if nothing changed
+     */
+    public int eliminate(int[] board) {
+        int passes = 1;
+        while (pass(board)) {
+            passes++;
+        }
+        return passes;
+    }
+
+    /**
+     * Runs one pass on the board
+     * @param board: the packed cells of the board
+     * @return boolean: true if a markup or a value changed
+     */
+    boolean pass(int[] board) {
+        Arrays.fill(used, 0);
+        for (int index = 0; index < board.length; index++) {
+            //An empty cell gives the bit 0, which no markup has
+            int bit = 1 << (board[index] >>> BoardState.VALUE_SHIFT);
+            used[rowUnit[index]] |= bit;
+            used[columnUnit[index]] |= bit;
+            used[boxUnit[index]] |= bit;
+        }
+
+        boolean changed = false;
+        for (int index = 0; index < board.length; index++) {
+            int cell = board[index];
+            if (cell >>> BoardState.VALUE_SHIFT != 0) {
+                continue;
+            }
+            int markup = cell & ~(used[rowUnit[index]] | used[columnUnit[index]]
+                    | used[boxUnit[index]]);
+            if (markup != cell || CandidateSet.size(markup) == 1) {
+                update(board, index, cell, markup);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Writes the new markup of an unsolved cell, or its value if the markup
+     *   has a single number left
+     * @param board: the packed cells of the board
+     * @param index: the index of the cell
+     * @param cell: the markup of the cell before the pass
+     * @param markup: its markup after the pass
+     */
+    final void update(int[] board, int index, int cell, int markup) {
+        candidatesRemoved += CandidateSet.size(cell & ~markup);
+        if (CandidateSet.size(markup) == 1) {
+            board[index] = BoardState.pack(CandidateSet.first(markup), 0);
+        } else {
+            board[index] = markup;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package benchmark;
+
+import SudokuSolver.Geometry;
+import SudokuSolver.LatencyHistogram;
+import SudokuSolver.LowLatencySolver;
+import SudokuSolver.Solver;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Checks that the solves of LowLatencySolver allocate nothing once warmed
+ *   up: solves each puzzle of the corpus, 9x9 to 25x25, in rounds of many
+ *   solves on the same thread, and prints the bytes the thread allocated
+ *   per solve. Then compares the latency percentiles of the 9x9 puzzles
+ *   with a new Grid and Solver per puzzle.
+ * While the JIT compiles the methods of the solver, the JVM charges the
+ *   thread that triggers a compilation with a few small objects of its own
+ *   (about 136 bytes, in no method of the solver; none with -Xint or with
+ *   C1 only). So the rounds of a puzzle go on until one allocates as much
+ *   as the one before, then MEASURED_ROUNDS rounds are measured, and a
+ *   puzzle only fails if each of them allocates: the solve itself then
+ *   allocates, while a compilation only shows in one round.
+ * Exits with 1 if any solve allocates, or if the JVM cannot count the bytes
+ *   allocated by a thread.
+ * Usage: AllocationCheck [--solves <count per puzzle>]
+ * @author morel
+ */
+public class AllocationCheck {
+
+    //Rounds measured once the allocations of a puzzle are stable
+    private static final int MEASURED_ROUNDS = 5;
+
+    //Maximum number of rounds to wait for them to be stable
+    private static final int MAX_WARMUP_ROUNDS = 50;
+
+    public static void main(String[] args) {
+        int solves = 200;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--solves")) {
+                solves = Integer.parseInt(args[i + 1]);
+            }
+        }
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof ThreadMXBean)
+                || !((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            System.out.println("This JVM cannot count the bytes allocated by a thread");
+            System.exit(1);
+        }
+        ThreadMXBean threads = (ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        //The first calls of the bean allocate, and so do its compilations
+        for (int i = 0; i < 20_000; i++) {
+            threads.getThreadAllocatedBytes(thread);
+        }
+
+        long warmUp = LowLatencySolver.warmUp(LowLatencySolver.DEFAULT_WARMUP_ROUNDS,
+                Geometry.of(4), Geometry.of(5));
+        System.out.println(String.format(Locale.ROOT, "warm up: %.1f ms", warmUp / 1e6));
+
+        ArrayList<String> puzzles = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        for (int c = 0; c < Corpus.CATEGORIES.length; c++) {
+            for (String puzzle : Corpus.CATEGORIES[c]) {
+                puzzles.add(puzzle);
+                names.add(Corpus.CATEGORY_NAMES[c]);
+            }
+        }
+        puzzles.add(Corpus.MULTIPLE_SOLUTIONS[0]);
+        names.add("multiple");
+        puzzles.add(Corpus.SIXTEEN[0]);
+        names.add("16x16");
+        puzzles.add(Corpus.TWENTY_FIVE[0]);
+        names.add("25x25");
+
+        System.out.println("puzzle          status      B/solve  warm-up rounds");
+        boolean failed = false;
+        for (int p = 0; p < puzzles.size(); p++) {
+            int[] values = Corpus.toValues(puzzles.get(p));
+            int[] solution = new int[values.length];
+            //The 25x25 board takes much longer than the others
+            int count = values.length > 81 ? Math.max(1, solves / 20) : solves;
+            //Rounds until the JIT is done with the paths of this puzzle
+            Object status = LowLatencySolver.solve(values, solution);
+            long previous = -1;
+            long bytes = round(threads, thread, values, solution, count);
+            int warmUpRounds = 1;
+            while (bytes != previous && warmUpRounds < MAX_WARMUP_ROUNDS) {
+                previous = bytes;
+                bytes = round(threads, thread, values, solution, count);
+                warmUpRounds++;
+            }
+            //The fewest bytes of the measured rounds
+            for (int r = 0; r < MEASURED_ROUNDS; r++) {
+                bytes = Math.min(bytes, round(threads, thread, values, solution, count));
+            }
+            failed |= bytes > 0;
+            System.out.println(String.format(Locale.ROOT, "%-15s %-11s %7.1f  %14d",
+                    names.get(p), status, (double) bytes / count, warmUpRounds));
+        }
+
+        //Latency of the 9x9 puzzles, pooled then with new objects
+        LatencyHistogram pooled = new LatencyHistogram();
+        LatencyHistogram fresh = new LatencyHistogram();
+        for (int i = 0; i < solves; i++) {
+            for (int p = 0; p < puzzles.size(); p++) {
+                String puzzle = puzzles.get(p);
+                if (puzzle.length() != 81) {
+                    continue;
+                }
+                int[] values = Corpus.toValues(puzzle);
+                int[] solution = new int[values.length];
+                long start = System.nanoTime();
+                LowLatencySolver.solve(values, solution);
+                pooled.record(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                new Solver().solve(Corpus.toGrid(puzzle));
+                fresh.record(System.nanoTime() - start);
+            }
+        }
+        System.out.println("9x9 solves      p50(us)  p99(us)  p99.9(us)  max(us)");
+        print("pooled", pooled);
+        print("new objects", fresh);
+
+        System.out.println(failed ? "FAILED: some solves allocate" : "OK: no allocation");
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Solves a puzzle count times
+     * @param threads: the bean counting the bytes
+     * @param thread: the id of the current thread
+     * @param values: the puzzle
+     * @param solution: gets its solution
+     * @param count: the number of solves
+     * @return long: the bytes allocated by the thread meanwhile
+     */
+    private static long round(ThreadMXBean threads, long thread, int[] values,
+            int[] solution, int count) {
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < count; i++) {
+            LowLatencySolver.solve(values, solution);
+        }
+        return threads.getThreadAllocatedBytes(thread) - before;
+    }
+
+    private static void print(String name, LatencyHistogram histogram) {
+        System.out.println(String.format(Locale.ROOT, "%-15s %7.1f  %7.1f  %9.1f  %7.1f", name,
+                histogram.getPercentile(0.5) / 1e3, histogram.getPercentile(0.99) / 1e3,
+                histogram.getPercentile(0.999) / 1e3, histogram.getMax() / 1e3));
+    }
+}
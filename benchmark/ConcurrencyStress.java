@@ -0,0 +1,181 @@
+package benchmark;
+
+import SudokuSolver.Cell;
+import SudokuSolver.Grid;
+import SudokuSolver.SolveResult;
+import SudokuSolver.Solver;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many threads on the same puzzles at once and checks that they all get
+ *   the answers of a single thread (see the threading model of Grid):
+ *   - solvers: each thread solves the whole corpus, 9x9 to 25x25, with its
+ *     own Solver and Grids, all of them sharing the tables of the Geometry
+ *   - queries: all the threads look for the preemptive sets of the same
+ *     grids, which nobody changes, with both searches
+ * Prints the number of checks and of mismatches, and exits with 1 if there
+ *   is any mismatch.
+ * Usage: ConcurrencyStress [--threads <count>] [--rounds <count>]
+ * @author morel
+ */
+public class ConcurrencyStress {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+        int roundCount = 20;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--rounds")) {
+                roundCount = Integer.parseInt(args[i + 1]);
+            }
+        }
+        final int rounds = roundCount;
+
+        ArrayList<String> puzzles = new ArrayList<>();
+        for (String[] category : Corpus.CATEGORIES) {
+            for (String puzzle : category) {
+                puzzles.add(puzzle);
+            }
+        }
+        for (String puzzle : Corpus.MULTIPLE_SOLUTIONS) {
+            puzzles.add(puzzle);
+        }
+        for (String puzzle : Corpus.SIXTEEN) {
+            puzzles.add(puzzle);
+        }
+        for (String puzzle : Corpus.TWENTY_FIVE) {
+            puzzles.add(puzzle);
+        }
+
+        //The answers of a single thread
+        String[] solutions = new String[puzzles.size()];
+        Solver solver = new Solver();
+        for (int p = 0; p < puzzles.size(); p++) {
+            solutions[p] = describe(solver.solve(Corpus.toGrid(puzzles.get(p))));
+        }
+
+        //The grids queried by all the threads, with their markups up to date
+        Grid[] sharedGrids = new Grid[2 * puzzles.size()];
+        String[] preemptiveSets = new String[sharedGrids.length];
+        for (int g = 0; g < sharedGrids.length; g++) {
+            Grid grid = Corpus.toGrid(puzzles.get(g / 2));
+            grid.markup();
+            grid.preemptiveSearch = g % 2 == 0
+                    ? Grid.PreemptiveSearch.SUBSET_MASK
+                    : Grid.PreemptiveSearch.CELL_TREE;
+            sharedGrids[g] = grid;
+            preemptiveSets[g] = describe(grid);
+        }
+
+        AtomicLong checks = new AtomicLong();
+        AtomicLong mismatches = new AtomicLong();
+        long start = System.nanoTime();
+        run(threads, thread -> {
+            Solver threadSolver = new Solver();
+            for (int round = 0; round < rounds; round++) {
+                //The threads start at different puzzles, so that several
+                //  sizes are solved at once
+                for (int k = 0; k < puzzles.size(); k++) {
+                    int p = (k + thread + round) % puzzles.size();
+                    Grid grid = Corpus.toGrid(puzzles.get(p));
+                    check(describe(threadSolver.solve(grid)), solutions[p], checks, mismatches);
+                }
+            }
+        });
+        long solveNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        run(threads, thread -> {
+            for (int round = 0; round < rounds; round++) {
+                for (int k = 0; k < sharedGrids.length; k++) {
+                    int g = (k + thread) % sharedGrids.length;
+                    //The CELL_TREE search is slow on 25x25 grids
+                    if (g % 2 == 1 && sharedGrids[g].getGeometry().getSize() > 16) {
+                        continue;
+                    }
+                    check(describe(sharedGrids[g]), preemptiveSets[g], checks, mismatches);
+                }
+            }
+        });
+        long queryNanos = System.nanoTime() - start;
+
+        System.out.println(threads + " threads, " + rounds + " rounds: " + checks.get()
+                + " checks, " + mismatches.get() + " mismatches ("
+                + solveNanos / 1000000 + " ms solving, " + queryNanos / 1000000 + " ms querying)");
+        if (mismatches.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The work of one thread
+     */
+    private interface Work {
+        void run(int thread);
+    }
+
+    /**
+     * Starts the threads together and waits until they are all done
+     * @param threads: the number of threads
+     * @param work: what each thread does
+     */
+    private static void run(int threads, Work work) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                work.run(thread);
+            }, "stress-" + t);
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private static void check(String actual, String expected,
+            AtomicLong checks, AtomicLong mismatches) {
+        checks.incrementAndGet();
+        if (!actual.equals(expected)) {
+            mismatches.incrementAndGet();
+            System.out.println("Mismatch in " + Thread.currentThread().getName()
+                    + ": " + actual + " instead of " + expected);
+        }
+    }
+
+    /**
+     * The status and the solution of a solve
+     */
+    private static String describe(SolveResult result) {
+        return result.getStatus() + " " + result.getSolutionString();
+    }
+
+    /**
+     * The preemptive sets of all the units of a grid, as the markups of
+     *   their cells
+     */
+    private static String describe(Grid grid) {
+        StringBuilder result = new StringBuilder();
+        for (int unit = 0; unit < grid.getGeometry().getUnitCount(); unit++) {
+            ArrayList<Cell> set = grid.getPreemptiveSet(unit);
+            if (set != null) {
+                result.append(unit).append(':');
+                for (Cell cell : set) {
+                    result.append(cell.getMarkup()).append(',');
+                }
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+}
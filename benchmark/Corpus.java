@@ -0,0 +1,122 @@
+package benchmark;
+
+import SudokuSolver.Grid;
+import SudokuSolver.PuzzleReader;
+
+/**
+ * Fixed set of puzzles used by the benchmarks, written as 81 digits, row
+ *   after row, 0 for an empty cell. The bigger boards are written with the
+ *   symbols of PuzzleReader (A for 10, B for 11...), one row per line
+ * @author morel
+ */
+public class Corpus {
+
+    //Solved by markup() alone
+    public static final String[] EASY = {
+        "003020600900305001001806400008102900700000008006708200002609500800203009005010300",
+        "200080300060070084030500209000105408000000000402706000301007040720040060004010003",
+        "020810740700003100090002805009040087400208003160030200302700060005600008076051090"
+    };
+
+    //Need a few guesses
+    public static final String[] MEDIUM = {
+        "000000907000420180000705026100904000050000040000507009920108000034059000507000000",
+        "030050040008010500460000012070502080000603000040109030250000098001020600080060020"
+    };
+
+    //Well known hard puzzles, including a 17 clues one
+    public static final String[] HARD = {
+        "400000805030000000000700000020000060000080400000010000000603070500200000104000000",
+        "800000000003600000070090200050007000000045700000100030001000068008500010090000400",
+        "000000010400000000020000000000050407008000300001090000300400200050100000000806000",
+        "000000039000001005003050800008090006070002000100400000009080050020000600400700000"
+    };
+
+    //Built to defeat naive searches
+    public static final String[] PATHOLOGICAL = {
+        "000000012000000003002300400001800005060070800000009000008500000900040500470006000",
+        "000000000000003085001020000000507000004000100090000000500000073002010000000040009"
+    };
+
+    //Not valid puzzles: they have several solutions. Kept apart from the
+    //  categories since proving it takes much longer than solving
+    public static final String[] MULTIPLE_SOLUTIONS = {
+        "000006000059000008200008000045000000003000000006003054000325006000000000000000000"
+    };
+
+    //A 16x16 puzzle with a unique solution, 150 empty cells
+    public static final String[] SIXTEEN = {
+        "00002GC0F1000000" +
+        "01F0007000480AC2" +
+        "000G03E00500090B" +
+        "75060009200000E0" +
+        "2800C000E00500B0" +
+        "0000000008201G00" +
+        "FGC105007600A800" +
+        "06004A08000000D0" +
+        "A084GC1230500D00" +
+        "000004A0G2000050" +
+        "000E60000BA00200" +
+        "10003E5F6D070008" +
+        "6E0D9007A0000000" +
+        "009B02041C000060" +
+        "04A00F300E00B080" +
+        "0C005D009080240A"
+    };
+
+    //A 25x25 puzzle with a unique solution, 320 empty cells
+    public static final String[] TWENTY_FIVE = {
+        "0L0AC000DM00059HG800J140I" +
+        "0100000GH800P0DLA0KN0000B" +
+        "09O6B000L070G2H040000D00M" +
+        "0H7G0O569BF000000M30K00N0" +
+        "30EP0FJ00I0C0000000O00G08" +
+        "40J0020D00000000H0A00B15O" +
+        "6B51OK0HCN27DG8I0F0000900" +
+        "08200561B00FL00M0EP3A000N" +
+        "AC00N0P0ME5O100800G00000F" +
+        "00300J0LI00000CB0O60G8020" +
+        "CJL00D00009POB300A8000000" +
+        "050060000A0G0000040000O9P" +
+        "000EG10F06L00C030P09000H0" +
+        "800009BO00060I52EG00C00L0" +
+        "B090P000J0HA78K5F0I0M2E00" +
+        "0F0CJG0M72P300E08KHA10I65" +
+        "H008KP9B0005I007M00G00C0J" +
+        "006I0A08NK0200700JL00E0P0" +
+        "9EP0040C00A00HN0I00000000" +
+        "00GM260I000J0L00000PH08AK" +
+        "EG03DIF0000L0N0P09OB0A080" +
+        "0A820B0000I00F00000004KC0" +
+        "N40K0M0300B950P02078F00I1" +
+        "00050CNK0L0H07A600F00G0M0" +
+        "00I010020H003E000L00005B9"
+    };
+
+    public static final String[][] CATEGORIES = {EASY, MEDIUM, HARD, PATHOLOGICAL};
+
+    public static final String[] CATEGORY_NAMES = {"easy", "medium", "hard", "pathological"};
+
+    /**
+     * Builds a grid from a puzzle of the corpus
+     * @param puzzle: the symbols of the puzzle
+     * @return Grid: the grid, with its markups initiated
+     */
+    public static Grid toGrid(String puzzle) {
+        return PuzzleReader.toGrid(puzzle);
+    }
+
+    /**
+     * Returns the values of a puzzle of the corpus, to be given to
+     *   Grid.setValues
+     * @param puzzle: the symbols of the puzzle
+     * @return int[]: the value of each cell, row after row
+     */
+    public static int[] toValues(String puzzle) {
+        int[] values = new int[puzzle.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = PuzzleReader.toValue(puzzle.charAt(i));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,210 @@
+package benchmark;
+
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Small benchmark harness in the spirit of JMH, written without dependencies
+ *   since the project has no build. Each benchmark is run for some warmup
+ *   iterations, then for measured iterations of a fixed duration, and the
+ *   average time and bytes allocated per operation are reported.
+ * The results can be written as JSON (with the same field names as JMH) or
+ *   CSV, to be compared between two versions.
+ * @author morel
+ */
+public class Harness {
+
+    /**
+     * One operation of a benchmark. It returns a value depending on its work,
+     *   which the harness keeps, so that the JIT cannot remove the work
+     */
+    public interface Operation {
+        long run();
+    }
+
+    /**
+     * The measures of a benchmark
+     */
+    public static class Result {
+
+        final String name;
+        final double nanosPerOp;
+        final double error;
+        final double bytesPerOp;
+        final long operations;
+
+        Result(String name, double nanosPerOp, double error, double bytesPerOp,
+                long operations) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+            this.operations = operations;
+        }
+    }
+
+    //Number of operations run between two readings of the clock
+    private static final int OPERATIONS_PER_CHECK = 8;
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final long iterationNanos;
+
+    private final ThreadMXBean threads = getThreadBean();
+
+    private final ArrayList<Result> results = new ArrayList<>();
+
+    //Values returned by the operations
+    private long sink;
+
+    public Harness(int warmupIterations, int measuredIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    private static ThreadMXBean getThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof ThreadMXBean
+                && ((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            ((ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+            return (ThreadMXBean) bean;
+        }
+        return null;
+    }
+
+    /**
+     * Runs a benchmark and prints its result
+     * @param name: the name of the benchmark
+     * @param operation: the operation to measure
+     * @return Result: the time and bytes allocated per operation
+     */
+    public Result run(String name, Operation operation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+
+        double[] nanosPerOp = new double[measuredIterations];
+        long totalOperations = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < measuredIterations; i++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long operations = iteration(operation);
+            long elapsed = System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytesBefore;
+            totalOperations += operations;
+            nanosPerOp[i] = (double) elapsed / operations;
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value;
+        }
+        mean /= measuredIterations;
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean);
+        }
+        //About a 99% confidence interval, as JMH prints
+        double error = measuredIterations > 1
+                ? 2.576 * Math.sqrt(variance / (measuredIterations - 1) / measuredIterations)
+                : Double.NaN;
+        double bytesPerOp = threads == null ? Double.NaN : (double) totalBytes / totalOperations;
+
+        Result result = new Result(name, mean, error, bytesPerOp, totalOperations);
+        results.add(result);
+        System.out.println(String.format(Locale.ROOT, "%-40s %14.1f +- %10.1f ns/op %12.1f B/op",
+                name, mean, error, bytesPerOp));
+        return result;
+    }
+
+    /**
+     * Runs the operation until the duration of an iteration is reached. The
+     *   clock is only read every OPERATIONS_PER_CHECK operations, so that
+     *   reading it does not weigh on the fastest operations
+     * @return long: the number of operations run
+     */
+    private long iteration(Operation operation) {
+        long operations = 0;
+        long start = System.nanoTime();
+        do {
+            for (int i = 0; i < OPERATIONS_PER_CHECK; i++) {
+                sink += operation.run();
+            }
+            operations += OPERATIONS_PER_CHECK;
+        } while (System.nanoTime() - start < iterationNanos);
+        return operations;
+    }
+
+    private long allocatedBytes() {
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public long getSink() {
+        return sink;
+    }
+
+    /**
+     * Writes the results in the JSON format of JMH (only the fields used)
+     * @param file: the file to write
+     */
+    public void writeJson(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                out.println("    {");
+                out.println("        \"benchmark\" : \"" + result.name + "\",");
+                out.println("        \"mode\" : \"avgt\",");
+                out.println("        \"warmupIterations\" : " + warmupIterations + ",");
+                out.println("        \"measurementIterations\" : " + measuredIterations + ",");
+                out.println("        \"primaryMetric\" : {");
+                out.println("            \"score\" : " + number(result.nanosPerOp) + ",");
+                out.println("            \"scoreError\" : " + number(result.error) + ",");
+                out.println("            \"scoreUnit\" : \"ns/op\"");
+                out.println("        },");
+                out.println("        \"secondaryMetrics\" : {");
+                out.println("            \"gc.alloc.rate.norm\" : {");
+                out.println("                \"score\" : " + number(result.bytesPerOp) + ",");
+                out.println("                \"scoreUnit\" : \"B/op\"");
+                out.println("            }");
+                out.println("        }");
+                out.println(i + 1 < results.size() ? "    }," : "    }");
+            }
+            out.println("]");
+        }
+    }
+
+    /**
+     * Writes the results as CSV, one line per benchmark
+     * @param file: the file to write
+     */
+    public void writeCsv(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("benchmark,ns_per_op,error,bytes_per_op,operations");
+            for (Result result : results) {
+                out.println(result.name + "," + csvNumber(result.nanosPerOp) + ","
+                        + csvNumber(result.error) + "," + csvNumber(result.bytesPerOp) + ","
+                        + result.operations);
+            }
+        }
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value)) {
+            return "\"NaN\"";
+        }
+        return csvNumber(value);
+    }
+
+    private static String csvNumber(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import SudokuSolver.Grid;
+import SudokuSolver.SolveResult;
+import SudokuSolver.Solver;
+import java.util.Arrays;
+
+/**
+ * Compares the FULL_SCAN and WORK_QUEUE propagations of Grid.markup() on the
+ *   corpus: checks that both reach the same markups and solutions, and
+ *   prints the work each one does per puzzle
+ * @author morel
+ */
+public class PropagationBenchmark {
+
+    //Number of timed runs per puzzle, the median is printed
+    static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        System.out.println("category      puzzle  checks(scan)  checks(queue)  ratio"
+                + "   us(scan)  us(queue)  identical");
+        for (int c = 0; c < Corpus.CATEGORIES.length; c++) {
+            String[] puzzles = Corpus.CATEGORIES[c];
+            for (int p = 0; p < puzzles.length; p++) {
+                String puzzle = puzzles[p];
+                boolean identical = sameMarkups(puzzle) && sameSolution(puzzle);
+
+                long scanChecks = peerChecks(puzzle, Grid.Propagation.FULL_SCAN);
+                long queueChecks = peerChecks(puzzle, Grid.Propagation.WORK_QUEUE);
+                long scanTime = medianTime(puzzle, Grid.Propagation.FULL_SCAN);
+                long queueTime = medianTime(puzzle, Grid.Propagation.WORK_QUEUE);
+
+                System.out.println(String.format("%-13s %6d  %12d  %13d  %5.1f  %9.1f  %9.1f  %s",
+                        Corpus.CATEGORY_NAMES[c], p, scanChecks, queueChecks,
+                        (double) scanChecks / queueChecks,
+                        scanTime / 1000.0, queueTime / 1000.0, identical));
+            }
+        }
+    }
+
+    /**
+     * Checks that both propagations give the same values and markups after
+     *   the first markup() of the puzzle
+     */
+    private static boolean sameMarkups(String puzzle) {
+        int[] scanState = new int[Grid.STATE_SIZE];
+        int[] queueState = new int[Grid.STATE_SIZE];
+
+        Grid grid = Corpus.toGrid(puzzle);
+        grid.propagation = Grid.Propagation.FULL_SCAN;
+        grid.markup();
+        grid.saveState(scanState);
+
+        grid = Corpus.toGrid(puzzle);
+        grid.propagation = Grid.Propagation.WORK_QUEUE;
+        grid.markup();
+        grid.saveState(queueState);
+
+        return Arrays.equals(scanState, queueState);
+    }
+
+    /**
+     * Checks that solving with both propagations gives the same result
+     */
+    private static boolean sameSolution(String puzzle) {
+        Grid grid = Corpus.toGrid(puzzle);
+        grid.propagation = Grid.Propagation.FULL_SCAN;
+        SolveResult scan = new Solver().solve(grid);
+
+        grid = Corpus.toGrid(puzzle);
+        grid.propagation = Grid.Propagation.WORK_QUEUE;
+        SolveResult queue = new Solver().solve(grid);
+
+        return scan.getStatus() == queue.getStatus()
+                && Arrays.equals(scan.getSolution(), queue.getSolution());
+    }
+
+    /**
+     * Returns the number of markup checks against an adjacent cell needed to
+     *   solve the puzzle
+     */
+    private static long peerChecks(String puzzle, Grid.Propagation propagation) {
+        Grid grid = Corpus.toGrid(puzzle);
+        grid.propagation = propagation;
+        new Solver().solve(grid);
+        return grid.getPeerChecks();
+    }
+
+    /**
+     * Returns the median time needed to solve the puzzle, in nanoseconds
+     */
+    private static long medianTime(String puzzle, Grid.Propagation propagation) {
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            Grid grid = Corpus.toGrid(puzzle);
+            grid.propagation = propagation;
+            long start = System.nanoTime();
+            new Solver().solve(grid);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+}
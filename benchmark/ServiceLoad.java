@@ -0,0 +1,143 @@
+package benchmark;
+
+import SudokuSolver.LatencyHistogram;
+import SudokuSolver.Solver;
+import SudokuSolver.SolverServer;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts a SolverServer on a free port and sends it single puzzles of the 9x9
+ *   corpus from many client threads at once, each waiting for its answer
+ *   before sending the next puzzle. Every answer is checked against the one
+ *   of a Solver, and a JSON batch of the whole corpus is sent at the end.
+ * Prints the requests per second and the latencies seen by the clients,
+ *   then the stats of the server, and exits with 1 if an answer is wrong.
+ * Usage: ServiceLoad [--clients <count>] [--seconds <count>]
+ *                    [--threads <count>] [--batch <puzzles>]
+ * @author morel
+ */
+public class ServiceLoad {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int clients = 64;
+        int seconds = 10;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = 32;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--clients")) {
+                clients = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--seconds")) {
+                seconds = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--batch")) {
+                batch = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        ArrayList<String> puzzles = new ArrayList<>();
+        for (String[] category : Corpus.CATEGORIES) {
+            for (String puzzle : category) {
+                puzzles.add(puzzle);
+            }
+        }
+        for (String puzzle : Corpus.MULTIPLE_SOLUTIONS) {
+            puzzles.add(puzzle);
+        }
+
+        //The answers of a single solver, as the lines of BatchSolver
+        String[] answers = new String[puzzles.size()];
+        Solver solver = new Solver();
+        for (int p = 0; p < puzzles.size(); p++) {
+            String solution = solver.solve(Corpus.toGrid(puzzles.get(p))).getSolutionString();
+            answers[p] = solution == null ? "unsolvable"
+                    : p < puzzles.size() - Corpus.MULTIPLE_SOLUTIONS.length
+                    ? solution : solution + " multiple";
+        }
+
+        //Like Sudoku --serve (see SolverServer)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        SolverServer server = new SolverServer(0, threads, batch);
+        server.start();
+        URI solve = URI.create("http://localhost:" + server.getPort() + "/solve");
+        URI stats = URI.create("http://localhost:" + server.getPort() + "/stats");
+        HttpClient client = HttpClient.newHttpClient();
+
+        AtomicLong mismatches = new AtomicLong();
+        LatencyHistogram latencies = new LatencyHistogram();
+        long end = System.nanoTime() + seconds * 1000000000L;
+        Thread[] workers = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            final int first = c;
+            workers[c] = new Thread(() -> {
+                LatencyHistogram clientLatencies = new LatencyHistogram();
+                int p = first % puzzles.size();
+                try {
+                    while (System.nanoTime() < end) {
+                        HttpRequest request = HttpRequest.newBuilder(solve)
+                                .POST(HttpRequest.BodyPublishers.ofString(puzzles.get(p)))
+                                .build();
+                        long start = System.nanoTime();
+                        String answer = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+                        clientLatencies.record(System.nanoTime() - start);
+                        if (!answer.trim().equals(answers[p])) {
+                            mismatches.incrementAndGet();
+                            System.out.println("Mismatch on puzzle " + p + ": " + answer.trim());
+                        }
+                        p = (p + 1) % puzzles.size();
+                    }
+                } catch (IOException e) {
+                    mismatches.incrementAndGet();
+                    System.out.println("Request failed: " + e);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                synchronized (latencies) {
+                    latencies.add(clientLatencies);
+                }
+            }, "client-" + c);
+            workers[c].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        //The whole corpus in one JSON request
+        StringBuilder json = new StringBuilder("{\"puzzles\": [");
+        for (int p = 0; p < puzzles.size(); p++) {
+            json.append(p == 0 ? "" : ", ").append('"').append(puzzles.get(p)).append('"');
+        }
+        json.append("]}");
+        String batchAnswer = client.send(HttpRequest.newBuilder(solve)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json.toString())).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        for (int p = 0; p < puzzles.size(); p++) {
+            String solution = answers[p].split(" ")[0];
+            if (!solution.equals("unsolvable") && !batchAnswer.contains("\"solution\":\"" + solution + "\"")) {
+                mismatches.incrementAndGet();
+                System.out.println("Mismatch on puzzle " + p + " of the JSON batch");
+            }
+        }
+
+        System.out.println(String.format("%d clients, %d solver threads: %.0f requests/s,"
+                + " p50 %.1f us, p99 %.1f us, max %.1f us, %d mismatches",
+                clients, threads, latencies.getCount() / (double) seconds,
+                latencies.getPercentile(0.50) / 1000.0, latencies.getPercentile(0.99) / 1000.0,
+                latencies.getMax() / 1000.0, mismatches.get()));
+        System.out.print(client.send(HttpRequest.newBuilder(stats).build(),
+                HttpResponse.BodyHandlers.ofString()).body());
+        server.stop(0);
+        if (mismatches.get() > 0) {
+            System.exit(1);
+        }
+    }
+}
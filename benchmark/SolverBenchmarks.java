@@ -0,0 +1,272 @@
+package benchmark;
+
+import SudokuSolver.Cell;
+import SudokuSolver.Geometry;
+import SudokuSolver.Grid;
+import SudokuSolver.HintSession;
+import SudokuSolver.ParallelSolver;
+import SudokuSolver.PuzzleGenerator;
+import SudokuSolver.PuzzleGrader;
+import SudokuSolver.Solver;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Benchmarks of the hot paths of the solver on the corpus:
+ *   - markup() from the initial markups of each puzzle
+ *   - getPreemptiveSet on all the units, with both searches (the CELL_TREE
+ *     search measures the CellNode tree building)
+ *   - Cell.compareTo
+ *   - solving a puzzle from its digits, including 16x16 and 25x25 ones,
+ *     with the PROPAGATION engine (solve.*) and the DANCING_LINKS one
+ *     (dancingLinks.*), also on the puzzles with several solutions
+ *   - checking that a puzzle has a unique solution with countSolutions
+ *   - grading a puzzle, and generating a graded 9x9 puzzle from a seed
+ *   - finding and applying the next step of a HintSession (hint.*)
+ *   - solving the hard and the big puzzles with the ParallelSolver on all
+ *     the cores (parallel.*). Only the allocations of the calling thread
+ *     are counted
+ * Usage: SolverBenchmarks [--quick] [--json <file>] [--csv <file>] [<filter>]
+ *   Only the benchmarks whose name contains the filter are run.
+ * @author morel
+ */
+public class SolverBenchmarks {
+
+    public static void main(String[] args) throws IOException {
+        boolean quick = false;
+        String json = null;
+        String csv = null;
+        String filter = "";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--quick")) {
+                quick = true;
+            } else if (args[i].equals("--json") && i + 1 < args.length) {
+                json = args[++i];
+            } else if (args[i].equals("--csv") && i + 1 < args.length) {
+                csv = args[++i];
+            } else {
+                filter = args[i];
+            }
+        }
+
+        Harness harness = quick ? new Harness(2, 3, 100) : new Harness(5, 10, 500);
+        for (int c = 0; c < Corpus.CATEGORIES.length; c++) {
+            String category = Corpus.CATEGORY_NAMES[c];
+            String[] puzzles = Corpus.CATEGORIES[c];
+            run(harness, filter, "markup." + category, markup(puzzles));
+            run(harness, filter, "preemptiveSet.subsetMask." + category,
+                    preemptiveSets(puzzles, Grid.PreemptiveSearch.SUBSET_MASK));
+            run(harness, filter, "preemptiveSet.cellTree." + category,
+                    preemptiveSets(puzzles, Grid.PreemptiveSearch.CELL_TREE));
+            run(harness, filter, "solve." + category,
+                    solve(puzzles, Solver.Engine.PROPAGATION));
+            run(harness, filter, "dancingLinks." + category,
+                    solve(puzzles, Solver.Engine.DANCING_LINKS));
+            run(harness, filter, "countSolutions." + category, countSolutions(puzzles));
+            run(harness, filter, "grade." + category, grade(puzzles));
+            run(harness, filter, "hint." + category, hint(puzzles));
+        }
+        run(harness, filter, "countSolutions.multipleSolutions",
+                countSolutions(Corpus.MULTIPLE_SOLUTIONS));
+        for (Solver.Engine engine : Solver.Engine.values()) {
+            String prefix = engine == Solver.Engine.PROPAGATION ? "solve." : "dancingLinks.";
+            run(harness, filter, prefix + "multipleSolutions",
+                    solve(Corpus.MULTIPLE_SOLUTIONS, engine));
+            run(harness, filter, prefix + "16x16", solve(Corpus.SIXTEEN, engine));
+            run(harness, filter, prefix + "25x25", solve(Corpus.TWENTY_FIVE, engine));
+        }
+        run(harness, filter, "parallel.hard", parallel(Corpus.HARD));
+        run(harness, filter, "parallel.pathological", parallel(Corpus.PATHOLOGICAL));
+        run(harness, filter, "parallel.16x16", parallel(Corpus.SIXTEEN));
+        run(harness, filter, "parallel.25x25", parallel(Corpus.TWENTY_FIVE));
+        run(harness, filter, "generate.9x9", generate());
+        run(harness, filter, "cell.compareTo", compareTo(Corpus.HARD));
+
+        if (json != null) {
+            harness.writeJson(Paths.get(json));
+        }
+        if (csv != null) {
+            harness.writeCsv(Paths.get(csv));
+        }
+        System.out.println("(" + harness.getSink() + ")");
+    }
+
+    private static void run(Harness harness, String filter, String name,
+            Harness.Operation operation) {
+        if (name.contains(filter)) {
+            harness.run(name, operation);
+        }
+    }
+
+    /**
+     * Initial states of the puzzles, before markup()
+     */
+    private static int[][] initialStates(Grid grid, String[] puzzles, boolean markup) {
+        int[][] states = new int[puzzles.length][grid.getStateSize()];
+        for (int i = 0; i < puzzles.length; i++) {
+            grid.setValues(Corpus.toValues(puzzles[i]));
+            if (markup) {
+                grid.markup();
+            }
+            grid.saveState(states[i]);
+        }
+        return states;
+    }
+
+    /**
+     * One operation: markup() on the next puzzle, from its initial markups
+     */
+    private static Harness.Operation markup(String[] puzzles) {
+        Grid grid = new Grid();
+        int[][] states = initialStates(grid, puzzles, false);
+        int[] next = {0};
+        return () -> {
+            grid.restoreState(states[next[0]++ % states.length]);
+            return grid.markup() ? 1 : 0;
+        };
+    }
+
+    /**
+     * One operation: getPreemptiveSet on the 27 units of the next puzzle,
+     *   once its markups are up to date
+     */
+    private static Harness.Operation preemptiveSets(String[] puzzles,
+            Grid.PreemptiveSearch search) {
+        Grid grid = new Grid();
+        grid.preemptiveSearch = search;
+        int[][] states = initialStates(grid, puzzles, true);
+        int[] next = {0};
+        return () -> {
+            grid.restoreState(states[next[0]++ % states.length]);
+            long found = 0;
+            for (int unit = 0; unit < grid.getGeometry().getUnitCount(); unit++) {
+                if (grid.getPreemptiveSet(unit) != null) {
+                    found++;
+                }
+            }
+            return found;
+        };
+    }
+
+    /**
+     * One operation: solving the next puzzle from its digits
+     */
+    private static Harness.Operation solve(String[] puzzles, Solver.Engine engine) {
+        Grid grid = new Grid(Corpus.toGrid(puzzles[0]).getGeometry());
+        Solver solver = new Solver();
+        solver.engine = engine;
+        int[][] values = new int[puzzles.length][];
+        for (int i = 0; i < puzzles.length; i++) {
+            values[i] = Corpus.toValues(puzzles[i]);
+        }
+        int[] next = {0};
+        return () -> {
+            grid.setValues(values[next[0]++ % values.length]);
+            return solver.solve(grid).getSolutionsFound();
+        };
+    }
+
+    /**
+     * One operation: counting up to 2 solutions of the next puzzle, as a
+     *   generator does to check that a puzzle has a unique solution
+     */
+    private static Harness.Operation countSolutions(String[] puzzles) {
+        Grid grid = new Grid(Corpus.toGrid(puzzles[0]).getGeometry());
+        Solver solver = new Solver();
+        int[][] values = new int[puzzles.length][];
+        for (int i = 0; i < puzzles.length; i++) {
+            values[i] = Corpus.toValues(puzzles[i]);
+        }
+        int[] next = {0};
+        return () -> {
+            grid.setValues(values[next[0]++ % values.length]);
+            return solver.countSolutions(grid, 2);
+        };
+    }
+
+    /**
+     * One operation: grading the next puzzle
+     */
+    private static Harness.Operation grade(String[] puzzles) {
+        PuzzleGrader grader = new PuzzleGrader();
+        Geometry geometry = Corpus.toGrid(puzzles[0]).getGeometry();
+        int[][] values = new int[puzzles.length][];
+        for (int i = 0; i < puzzles.length; i++) {
+            values[i] = Corpus.toValues(puzzles[i]);
+        }
+        int[] next = {0};
+        return () -> grader.grade(geometry, values[next[0]++ % values.length]).getLevel().ordinal();
+    }
+
+    /**
+     * One operation: finding the next step of a session and applying it.
+     *   Once no step is left, the moves are undone and the next puzzle is
+     *   started, which is part of the operation
+     */
+    private static Harness.Operation hint(String[] puzzles) {
+        Geometry geometry = Corpus.toGrid(puzzles[0]).getGeometry();
+        HintSession[] sessions = new HintSession[puzzles.length];
+        for (int i = 0; i < puzzles.length; i++) {
+            sessions[i] = new HintSession(geometry, Corpus.toValues(puzzles[i]));
+        }
+        int[] next = {0};
+        return () -> {
+            HintSession session = sessions[next[0] % sessions.length];
+            HintSession.Step step = session.nextStep();
+            if (step == null) {
+                while (session.undo()) {
+                }
+                next[0]++;
+                return 0;
+            }
+            session.apply(step);
+            return step.getRule().ordinal();
+        };
+    }
+
+    /**
+     * One operation: generating and grading the puzzle of the next seed
+     */
+    private static Harness.Operation generate() {
+        PuzzleGenerator generator = new PuzzleGenerator(Geometry.of(3));
+        long[] seed = {0};
+        return () -> generator.generate(seed[0]++).getClueCount();
+    }
+
+    /**
+     * One operation: solving the next puzzle on all the cores
+     */
+    private static Harness.Operation parallel(String[] puzzles) {
+        Grid grid = new Grid(Corpus.toGrid(puzzles[0]).getGeometry());
+        ParallelSolver solver = new ParallelSolver();
+        int[][] values = new int[puzzles.length][];
+        for (int i = 0; i < puzzles.length; i++) {
+            values[i] = Corpus.toValues(puzzles[i]);
+        }
+        int[] next = {0};
+        return () -> {
+            grid.setValues(values[next[0]++ % values.length]);
+            return solver.solve(grid).getSolutionsFound();
+        };
+    }
+
+    /**
+     * One operation: comparing two cells of the puzzles, once their markups
+     *   are up to date
+     */
+    private static Harness.Operation compareTo(String[] puzzles) {
+        Cell[] cells = new Cell[puzzles.length * 81];
+        for (int i = 0; i < puzzles.length; i++) {
+            Grid grid = Corpus.toGrid(puzzles[i]);
+            grid.markup();
+            for (int index = 0; index < 81; index++) {
+                cells[i * 81 + index] = grid.getCell(index);
+            }
+        }
+        int[] next = {0};
+        return () -> {
+            int i = next[0]++ % (cells.length - 1);
+            return cells[i].compareTo(cells[i + 1]);
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package benchmark;
+
+import SudokuSolver.Geometry;
+import SudokuSolver.Grid;
+import SudokuSolver.UnitEliminator;
+import java.util.Arrays;
+
+/**
+ * Compares the scalar and the vector passes of UnitEliminator (the
+ *   UNIT_MASKS propagation of Grid.markup()) on the 9x9 and 25x25 puzzles
+ *   of the corpus, with the WORK_QUEUE propagation as reference: checks that
+ *   all three reach the same markups from the initial markups of each
+ *   puzzle, and prints the median time of each one to reach them.
+ * Run it with --add-modules jdk.incubator.vector, after compiling the vector
+ *   folder, to get the vector version; it is skipped otherwise.
+ * @author morel
+ */
+public class UnitEliminationBenchmark {
+
+    //Number of markups per run, of runs to warm up, and of timed runs. The
+    //  vector code is only compiled by C2 after many calls
+    static final int REPETITIONS = 2000;
+    static final int WARMUP_RUNS = 30;
+    static final int RUNS = 7;
+
+    public static void main(String[] args) {
+        System.out.println("vector: " + (UnitEliminator.isVectorAvailable() ? "available"
+                : "not available, run with --add-modules jdk.incubator.vector"));
+        System.out.println("board   puzzles  passes  us(queue)  us(scalar)  us(vector)  identical");
+        String[] nine = Arrays.stream(Corpus.CATEGORIES).flatMap(Arrays::stream)
+                .toArray(String[]::new);
+        run("9x9", Geometry.of(3), nine);
+        run("25x25", Geometry.of(5), Corpus.TWENTY_FIVE);
+    }
+
+    private static void run(String name, Geometry geometry, String[] puzzles) {
+        //The board of each puzzle before its first markup()
+        int[][] initial = new int[puzzles.length][];
+        Grid grid = new Grid(geometry);
+        for (int p = 0; p < puzzles.length; p++) {
+            grid.setValues(Corpus.toValues(puzzles[p]));
+            initial[p] = new int[grid.getStateSize()];
+            grid.saveState(initial[p]);
+        }
+        UnitEliminator scalar = new UnitEliminator(geometry);
+        UnitEliminator vector = UnitEliminator.create(geometry);
+        if (!vector.isVector()) {
+            vector = null;
+        }
+
+        boolean identical = true;
+        long passes = 0;
+        int[] board = new int[grid.getStateSize()];
+        int[] expected = new int[grid.getStateSize()];
+        for (int[] state : initial) {
+            grid.restoreState(state);
+            grid.propagation = Grid.Propagation.WORK_QUEUE;
+            grid.markup();
+            grid.saveState(expected);
+            System.arraycopy(state, 0, board, 0, board.length);
+            passes += scalar.eliminate(board);
+            identical &= Arrays.equals(expected, board);
+            if (vector != null) {
+                System.arraycopy(state, 0, board, 0, board.length);
+                vector.eliminate(board);
+                identical &= Arrays.equals(expected, board);
+            }
+        }
+
+        double queueTime = medianTime(initial, grid, null, board);
+        double scalarTime = medianTime(initial, grid, scalar, board);
+        String vectorTime = vector == null ? "-"
+                : String.format("%.2f", medianTime(initial, grid, vector, board));
+        System.out.println(String.format("%-7s %7d  %6.1f  %9.2f  %10.2f  %10s  %s", name,
+                puzzles.length, (double) passes / puzzles.length, queueTime, scalarTime,
+                vectorTime, identical));
+    }
+
+    /**
+     * Returns the median time to reach the markups of a puzzle, in
+     *   microseconds, with the eliminator or, if null, with the WORK_QUEUE
+     *   propagation of the grid
+     */
+    private static double medianTime(int[][] initial, Grid grid, UnitEliminator eliminator,
+            int[] board) {
+        long[] times = new long[RUNS];
+        for (int run = -WARMUP_RUNS; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < REPETITIONS; i++) {
+                int[] state = initial[i % initial.length];
+                if (eliminator == null) {
+                    grid.restoreState(state);
+                    grid.markup();
+                } else {
+                    System.arraycopy(state, 0, board, 0, board.length);
+                    eliminator.eliminate(board);
+                }
+            }
+            if (run >= 0) {
+                times[run] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2] / 1000.0 / REPETITIONS;
+    }
+}
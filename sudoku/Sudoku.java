@@ -1,3 +1,34 @@
+package sudoku;
+
+import SudokuSolver.BatchSolver;
+import SudokuSolver.BinaryPuzzleReader;
+import SudokuSolver.BinaryPuzzleWriter;
+import SudokuSolver.Cell;
+import SudokuSolver.Geometry;
+import SudokuSolver.Grid;
+import SudokuSolver.HintSession;
+import SudokuSolver.LowLatencySolver;
+import SudokuSolver.PuzzleGenerator;
+import SudokuSolver.PuzzleReader;
+import SudokuSolver.SolutionCache;
+import SudokuSolver.SolveResult;
+import SudokuSolver.Solver;
+import SudokuSolver.SolverServer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Scanner;
+
 /**
  *
  * @author morel
@@ -6,14 +37,47 @@ public class Sudoku {
 
     static Grid grid;
 
-    public static void main(String[] args) {
-        Cell[][] cells = new Cell[9][9];
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            solveBatch(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--stream")) {
+            solveStream(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--generate")) {
+            generate(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--pack")) {
+            pack(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--unpack")) {
+            unpack(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--explain")) {
+            explain(args);
+            return;
+        }
+
         Scanner input = new Scanner(System.in);
         String row = new String();
         int rowNumber = 0;
         System.out.println("Enter grid to solve:");
-        for (int i = 0; i < 9; i++) {
-            row = input.nextLine();
+        //The length of the first row gives the size of the grid
+        row = input.nextLine().trim();
+        Cell[][] cells = new Cell[row.length()][row.length()];
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                row = input.nextLine();
+            }
             fillGrid(row, cells, rowNumber);
             rowNumber++;
         }
@@ -40,56 +104,420 @@ public class Sudoku {
         System.out.println("\n\nUpdated grid:");
         printGridWithMarkups(grid);
         
-        System.out.println("\n\nUpdated grid with row preemptive sets removed:");
+        System.out.println("\n\nUpdated grid with preemptive sets removed:");
         grid.useAllPreemptiveSets();
         printGridWithMarkups(grid);
 
     }
 
+    /**
+     * Solves a file of puzzles on all the cores:
+     *   --batch <input> [<output>] [--threads <count>] [--mapped] [--stats]
+     *           [--cache <puzzles>]
+     * The solutions are written to the output file, or to the standard output,
+     *   and the throughput and latencies are printed on the error output. A
+     *   puzzle that cannot be read gets an "invalid" line, and the batch
+     *   goes on with the next one.
+     *   With --mapped, the input must be made of fixed-width records, which
+     *   are read from a memory-mapped file by all the threads at once, and
+     *   the output file is required. With --stats, the work done and the
+     *   time spent in each phase are added up and printed with the report.
+     *   With --cache, the results of the last puzzles are kept, and used for
+     *   the puzzles seen again or symmetric to one of them: its value is the
+     *   number of puzzles kept, whatever the number of their variants
+     * @param args: the arguments of the program
+     * @throws IOException: if the files cannot be read or written
+     */
+    public static void solveBatch(String[] args) throws IOException {
+        String inputFile = null;
+        String outputFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean mapped = false;
+        boolean stats = false;
+        int cacheSize = 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--mapped")) {
+                mapped = true;
+            } else if (args[i].equals("--stats")) {
+                stats = true;
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheSize = Integer.parseInt(args[++i]);
+            } else if (inputFile == null) {
+                inputFile = args[i];
+            } else {
+                outputFile = args[i];
+            }
+        }
+        if (inputFile == null || (mapped && outputFile == null)) {
+            System.err.println("Usage: --batch <input> [<output>] [--threads <count>] [--mapped] [--stats]"
+                    + " [--cache <puzzles>]");
+            return;
+        }
+
+        BatchSolver solver = new BatchSolver(threads);
+        solver.collectStats = stats;
+        if (cacheSize > 0) {
+            solver.cache = new SolutionCache(cacheSize);
+        }
+        if (mapped) {
+            solver.solveMapped(Paths.get(inputFile), Paths.get(outputFile));
+            solver.printReport(System.err);
+            return;
+        }
+        try (BufferedReader input = new BufferedReader(new FileReader(inputFile), 1 << 16);
+                Writer output = new BufferedWriter(outputFile == null
+                        ? new OutputStreamWriter(System.out)
+                        : new FileWriter(outputFile), 1 << 16)) {
+            solver.solve(input, output);
+        }
+        solver.printReport(System.err);
+    }
+
+    /**
+     * Solves the puzzles of the standard input as they come, and writes only
+     *   their solutions on the standard output, one line per puzzle (see
+     *   BatchSolver), so the program can sit in a pipe:
+     *   --stream [--threads <count>] [--cache <puzzles>] [--report]
+     * The memory used does not depend on the length of the stream. The
+     *   output does not go through System.out, which hides the errors, so
+     *   the program stops when the reader at the other end of the pipe is
+     *   gone. With --report, the report of BatchSolver is printed on the
+     *   error output at the end
+     * @param args: the arguments of the program
+     * @throws IOException: if the input cannot be read
+     */
+    public static void solveStream(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int cacheSize = 0;
+        boolean report = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--report")) {
+                report = true;
+            }
+        }
+
+        BatchSolver solver = new BatchSolver(threads);
+        if (cacheSize > 0) {
+            solver.cache = new SolutionCache(cacheSize);
+        }
+        BufferedReader input = new BufferedReader(
+                new InputStreamReader(System.in, StandardCharsets.US_ASCII), 1 << 16);
+        Writer output = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.US_ASCII), 1 << 16);
+        try {
+            solver.solve(input, output);
+        } catch (BatchSolver.OutputException e) {
+            //The reader of the output is gone: there is nobody left to solve for
+        }
+        if (report) {
+            solver.printReport(System.err);
+        }
+    }
+
+    /**
+     * Generates graded puzzles with a unique solution on all the cores:
+     *   --generate <count> [<output>] [--seed <seed>] [--threads <count>]
+     *              [--size <width>] [--clues <count>]
+     * Each line has the symbols of a puzzle and its grade (see
+     *   PuzzleGenerator). The same seed gives the same puzzles, whatever the
+     *   number of threads; it is the current time by default, and is printed
+     *   on the error output with the throughput. The boards are 9x9 by
+     *   default. The puzzles are minimal, unless --clues is given: they then
+     *   have that number of clues, or a few more, and are much faster to make
+     * @param args: the arguments of the program
+     * @throws IOException: if the output cannot be written
+     */
+    public static void generate(String[] args) throws IOException {
+        long count = -1;
+        String outputFile = null;
+        long seed = System.currentTimeMillis();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int size = 9;
+        int targetClues = 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--size") && i + 1 < args.length) {
+                size = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--clues") && i + 1 < args.length) {
+                targetClues = Integer.parseInt(args[++i]);
+            } else if (count < 0) {
+                count = Long.parseLong(args[i]);
+            } else {
+                outputFile = args[i];
+            }
+        }
+        if (count < 0) {
+            System.err.println("Usage: --generate <count> [<output>] [--seed <seed>]"
+                    + " [--threads <count>] [--size <width>] [--clues <count>]");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (Writer output = new BufferedWriter(outputFile == null
+                ? new OutputStreamWriter(System.out)
+                : new FileWriter(outputFile), 1 << 16)) {
+            PuzzleGenerator.generate(Geometry.ofSize(size), count, seed, threads,
+                    targetClues, output);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.println(String.format("%d puzzles from the seed %d in %.3f s on %d threads:"
+                + " %.0f puzzles/s", count, seed, seconds, threads, count / seconds));
+    }
+
+    /**
+     * Imports text puzzles into a binary file (see BinaryPuzzleFormat):
+     *   --pack <input> <output> [--solve]
+     * The input can have any format read by PuzzleReader, including the rows
+     *   of fillGrid, but all its puzzles must have the same size. With
+     *   --solve, the puzzles are solved and their solutions are stored too
+     * @param args: the arguments of the program
+     * @throws IOException: if the files cannot be read or written
+     */
+    public static void pack(String[] args) throws IOException {
+        boolean solve = false;
+        ArrayList<String> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--solve")) {
+                solve = true;
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 2) {
+            System.err.println("Usage: --pack <input> <output> [--solve]");
+            return;
+        }
+
+        long start = System.nanoTime();
+        Solver solver = new Solver();
+        BinaryPuzzleWriter writer = null;
+        try (BufferedReader input = new BufferedReader(new FileReader(files.get(0)), 1 << 16)) {
+            PuzzleReader reader = new PuzzleReader(input);
+            String puzzle;
+            while ((puzzle = reader.next()) != null) {
+                Grid puzzleGrid = PuzzleReader.toGrid(puzzle);
+                if (writer == null) {
+                    writer = new BinaryPuzzleWriter(Paths.get(files.get(1)),
+                            puzzleGrid.getGeometry(), solve);
+                }
+                if (!solve) {
+                    writer.write(puzzleGrid);
+                    continue;
+                }
+                int[] values = new int[puzzle.length()];
+                for (int index = 0; index < values.length; index++) {
+                    values[index] = puzzleGrid.getValue(index);
+                }
+                writer.write(values, solver.solve(puzzleGrid));
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        if (writer == null) {
+            System.err.println(files.get(0) + " has no puzzle");
+            return;
+        }
+        System.err.println(String.format("%d puzzles packed in %.3f s",
+                writer.getRecordCount(), (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Exports a binary file as text, one line per puzzle: the symbols of the
+     *   puzzle, then, if it was solved, the symbols of its solution or
+     *   "unsolvable", and " multiple" if it has several solutions
+     *   --unpack <input> [<output>]
+     * @param args: the arguments of the program
+     * @throws IOException: if the files cannot be read or written
+     */
+    public static void unpack(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: --unpack <input> [<output>]");
+            return;
+        }
+        try (BinaryPuzzleReader reader = new BinaryPuzzleReader(Paths.get(args[1]));
+                Writer output = new BufferedWriter(args.length < 3
+                        ? new OutputStreamWriter(System.out)
+                        : new FileWriter(args[2]), 1 << 16)) {
+            char[] symbols = new char[reader.getGeometry().getSize() * reader.getGeometry().getSize()];
+            while (reader.next()) {
+                toSymbols(reader.getPuzzle(), symbols);
+                output.write(symbols);
+                SolveResult.Status status = reader.getStatus();
+                if (status == SolveResult.Status.UNSOLVABLE) {
+                    output.write(" unsolvable");
+                } else if (status != null) {
+                    output.write(' ');
+                    toSymbols(reader.getSolution(), symbols);
+                    output.write(symbols);
+                    if (status == SolveResult.Status.MULTIPLE) {
+                        output.write(" multiple");
+                    }
+                }
+                output.write('\n');
+            }
+        }
+    }
+
+    private static void toSymbols(int[] values, char[] symbols) {
+        for (int i = 0; i < values.length; i++) {
+            symbols[i] = PuzzleReader.toSymbol(values[i]);
+        }
+    }
+
+    /**
+     * Solves a puzzle one logical step at a time, and prints each step with
+     *   the rule that makes it (see HintSession):
+     *   --explain <puzzle>
+     * The puzzle is written on one line, with the symbols of PuzzleReader. If
+     *   the rules are not enough to solve it, the steps stop where a guess
+     *   would be needed
+     * @param args: the arguments of the program
+     */
+    public static void explain(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: --explain <puzzle>");
+            return;
+        }
+        String puzzle = args[1].trim();
+        int[] values = new int[puzzle.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = PuzzleReader.toValue(puzzle.charAt(i));
+        }
+        int size = (int) Math.round(Math.sqrt(values.length));
+        HintSession session = new HintSession(Geometry.ofSize(size), values);
+        int steps = 0;
+        HintSession.Step step = session.nextStep();
+        while (step != null && step.getRule() != HintSession.Rule.CONTRADICTION) {
+            steps++;
+            System.out.println(steps + ". " + step);
+            session.apply(step);
+            step = session.nextStep();
+        }
+        if (step != null) {
+            System.out.println(step);
+        } else if (session.isSolved()) {
+            System.out.println("Solved in " + steps + " steps");
+        } else {
+            System.out.println("No logical step left after " + steps + " steps: a guess is needed");
+        }
+    }
+
+    /**
+     * Runs the HTTP solving service on the loopback interface, until the
+     *   program is stopped:
+     *   --serve [<port>] [--threads <count>] [--batch <puzzles>]
+     *           [--cache <puzzles>] [--warmup]
+     * The port is 8080 by default. --threads is the number of solver
+     *   threads, all the cores by default, and --batch the maximum number of
+     *   puzzles a solver thread takes at once, 32 by default (see
+     *   SolverServer). With --warmup, the solver is warmed up (see
+     *   LowLatencySolver) before the port is opened, so the first requests
+     *   are not solved by code the JIT has not compiled yet.
+     * TCP_NODELAY is set for the HTTP server of the JDK, unless the property
+     *   sun.net.httpserver.nodelay is already given on the command line
+     * @param args: the arguments of the program
+     * @throws IOException: if the port cannot be opened
+     */
+    public static void serve(String[] args) throws IOException {
+        //Without it, each answer waits for the delayed acknowledgement of the
+        //  client (see SolverServer)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = 32;
+        int cacheSize = 0;
+        boolean warmUp = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batch = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--warmup")) {
+                warmUp = true;
+            } else {
+                port = Integer.parseInt(args[i]);
+            }
+        }
+
+        if (warmUp) {
+            long nanos = LowLatencySolver.warmUp(LowLatencySolver.DEFAULT_WARMUP_ROUNDS);
+            System.err.println("Warmed up in " + nanos / 1_000_000 + " ms");
+        }
+        SolverServer server = new SolverServer(port, threads, batch);
+        if (cacheSize > 0) {
+            server.cache = new SolutionCache(cacheSize);
+        }
+        server.start();
+        System.err.println("Solving on http://localhost:" + server.getPort()
+                + "/solve with " + threads + " threads, statistics on /stats");
+    }
+
     public static void printAllPreemptiveSets() {
+        int size = grid.grid.length;
+        int boxSize = grid.getGeometry().getBoxSize();
         System.out.println("Preemptive sets: \n");
         //Rows
         System.out.println("Rows:");
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < size; i++) {
             System.out.println("Row #" + i + ":");
-            printPreemptiveSet(grid.getPreemptiveSet(grid.getRow(i, 0, true)));
+            printPreemptiveSet(grid.getPreemptiveSet(grid.getGeometry().rowUnit(i)));
         }
 
         //Columns
         System.out.println("Columns:");
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < size; i++) {
             System.out.println("Column #" + i + ":");
-            printPreemptiveSet(grid.getPreemptiveSet(grid.getColumn(0, i, true)));
+            printPreemptiveSet(grid.getPreemptiveSet(grid.getGeometry().columnUnit(i)));
         }
 
         //3x3 Grids
         System.out.println("3x3 Grids");
-        for (int i = 0; i < 9; i+=3) {
-            for (int j = 0; j < 9; j+=3) {
+        for (int i = 0; i < size; i+=boxSize) {
+            for (int j = 0; j < size; j+=boxSize) {
                 System.out.println("Grid (" + i + ", " + j + "):");
-                printPreemptiveSet(grid.getPreemptiveSet(grid.get3x3Grid(i, j, true)));
+                printPreemptiveSet(grid.getPreemptiveSet(grid.getGeometry().boxUnit(i + j / boxSize)));
             }
         }
     }
 
     public static void fillGrid(String row, Cell[][] cells, int rowNumber) {
-        for (int i = 0; i < 9; i++) {
-            cells[rowNumber][i] = new Cell(rowNumber, i, Integer.parseInt(row.charAt(i) + ""));
+        for (int i = 0; i < cells.length; i++) {
+            cells[rowNumber][i] = new Cell(rowNumber, i, PuzzleReader.toValue(row.charAt(i)));
         }
     }
 
     public static void printGridWithMarkups(Grid grid) {
-        System.out.println("Current 9x9 grid with markups: ");
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                System.out.print(grid.grid[i][j].value + "         ");
+        int size = grid.grid.length;
+        System.out.println("Current " + size + "x" + size + " grid with markups: ");
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                System.out.print(PuzzleReader.toSymbol(grid.grid[i][j].getValue()));
+                for (int k = 1; k < size + 1; k++) {
+                    System.out.print(" ");
+                }
             }
             System.out.println();
-            for (int j = 0; j < 9; j++) {
-                for (int markup : grid.grid[i][j].markup) {
-                    System.out.print(markup);
+            for (int j = 0; j < size; j++) {
+                for (int markup : grid.grid[i][j].getMarkup()) {
+                    System.out.print(PuzzleReader.toSymbol(markup));
                 }
-                for (int k = grid.grid[i][j].markup.size(); k < 10; k++) {
+                for (int k = grid.grid[i][j].getMarkup().size(); k < size + 1; k++) {
                     System.out.print(" ");
                 }
             }
@@ -98,10 +526,11 @@ public class Sudoku {
     }
 
     public static void printGrid(Grid grid) {
-        System.out.println("Current 9x9 grid: ");
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                System.out.print(grid.grid[i][j].value);
+        int size = grid.grid.length;
+        System.out.println("Current " + size + "x" + size + " grid: ");
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                System.out.print(PuzzleReader.toSymbol(grid.grid[i][j].getValue()));
             }
             System.out.println();
         }
@@ -111,7 +540,7 @@ public class Sudoku {
         System.out.println("Values in the 3x3 grid: ");
         ArrayList<Cell> _3x3Grid = grid.get3x3Grid(row, column, false);
         for (Cell cell : _3x3Grid) {
-            System.out.print(cell.value + " ");
+            System.out.print(cell.getValue() + " ");
         }
         System.out.println();
     }
@@ -120,7 +549,7 @@ public class Sudoku {
         System.out.println("Values in the row: ");
         ArrayList<Cell> rowList = grid.getRow(row, column, false);
         for (Cell cell : rowList) {
-            System.out.print(cell.value + " ");
+            System.out.print(cell.getValue() + " ");
         }
         System.out.println();
     }
@@ -129,7 +558,7 @@ public class Sudoku {
         System.out.println("Values in the column: ");
         ArrayList<Cell> columnList = grid.getColumn(row, column, false);
         for (Cell cell : columnList) {
-            System.out.print(cell.value + " ");
+            System.out.print(cell.getValue() + " ");
         }
         System.out.println();
     }
@@ -138,7 +567,7 @@ public class Sudoku {
         System.out.println("Adjacent cells: ");
         ArrayList<Cell> adjCells = grid.getAdjCells(row, column, false);
         for (int i = 0; i < adjCells.size(); i++) {
-            System.out.print(adjCells.get(i).value + " ");
+            System.out.print(adjCells.get(i).getValue() + " ");
             if (i == 9) {
                 System.out.println();
             }
@@ -151,15 +580,19 @@ public class Sudoku {
             System.out.println("");
             return;
         }
+        int size = grid.grid.length;
         for (int i = 0; i < set.size(); i++) {
-            System.out.print(set.get(i).value + "         ");
+            System.out.print(PuzzleReader.toSymbol(set.get(i).getValue()));
+            for (int j = 1; j < size + 1; j++) {
+                System.out.print(" ");
+            }
         }
         System.out.println();
         for (int i = 0; i < set.size(); i++) {
-            for (int j : set.get(i).markup) {
-                System.out.print(j);
+            for (int j : set.get(i).getMarkup()) {
+                System.out.print(PuzzleReader.toSymbol(j));
             }
-            for (int j = set.get(i).markup.size(); j < 10; j++) {
+            for (int j = set.get(i).getMarkup().size(); j < size + 1; j++) {
                 System.out.print(" ");
             }
         }
@@ -0,0 +1,118 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class runs the passes of UnitEliminator on SIMD lanes with the JDK
+ *   Vector API (the jdk.incubator.vector module), a vector of cells at a
+ *   time, the cells left after the last full vector being done as in the
+ *   scalar version:
+ *   - the value bits of the cells are shifted into place, then ORed into the
+ *     masks of their units one cell at a time, since the cells of a vector
+ *     can share a unit
+ *   - the masks of the row, column and box of each cell are gathered and
+ *     removed from the cells (AND-NOT), which leaves the solved cells
+ *     unchanged, since their value is above the bits of the markups
+ *   - the cells left with a single number get it as their value, and the
+ *     numbers removed are counted, with a bit count made of shifts and adds
+ *     since the Vector API of JDK 17 has no lanewise bit count
+ * This class is compiled on its own, from the vector folder (see the README),
+ *   and is only loaded by UnitEliminator.create when the module is there.
+ * @author morel
+ */
+class VectorUnitEliminator extends UnitEliminator {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    //The first value of a packed cell, which no markup reaches
+    private static final int SOLVED = 1 << BoardState.VALUE_SHIFT;
+
+    //The value bit of each cell
+    private final int[] bits;
+
+    public VectorUnitEliminator(Geometry geometry) {
+        super(geometry);
+        bits = new int[geometry.cellCount];
+    }
+
+    @Override
+    public boolean isVector() {
+        return true;
+    }
+
+    @Override
+    boolean pass(int[] board) {
+        int length = board.length;
+        int bound = SPECIES.loopBound(length);
+        IntVector one = IntVector.broadcast(SPECIES, 1);
+
+        int index = 0;
+        for (; index < bound; index += SPECIES.length()) {
+            //An empty cell gives the bit 0, which no markup has
+            one.lanewise(VectorOperators.LSHL, IntVector.fromArray(SPECIES, board, index)
+                    .lanewise(VectorOperators.LSHR, BoardState.VALUE_SHIFT))
+                    .intoArray(bits, index);
+        }
+        for (; index < length; index++) {
+            bits[index] = 1 << (board[index] >>> BoardState.VALUE_SHIFT);
+        }
+        Arrays.fill(used, 0);
+        for (index = 0; index < length; index++) {
+            used[rowUnit[index]] |= bits[index];
+            used[columnUnit[index]] |= bits[index];
+            used[boxUnit[index]] |= bits[index];
+        }
+
+        boolean changed = false;
+        for (index = 0; index < bound; index += SPECIES.length()) {
+            IntVector cells = IntVector.fromArray(SPECIES, board, index);
+            IntVector masks = IntVector.fromArray(SPECIES, used, 0, rowUnit, index)
+                    .or(IntVector.fromArray(SPECIES, used, 0, columnUnit, index))
+                    .or(IntVector.fromArray(SPECIES, used, 0, boxUnit, index));
+            IntVector markups = cells.lanewise(VectorOperators.AND_NOT, masks);
+            //The markup of one number is a power of 2, whose value is the
+            //  number of bits below it
+            VectorMask<Integer> single = cells.compare(VectorOperators.LT, SOLVED)
+                    .and(markups.compare(VectorOperators.NE, 0))
+                    .and(markups.and(markups.sub(1)).compare(VectorOperators.EQ, 0));
+            IntVector updated = markups.blend(bitCount(markups.sub(1))
+                    .lanewise(VectorOperators.LSHL, BoardState.VALUE_SHIFT), single);
+            if (updated.compare(VectorOperators.NE, cells).anyTrue()) {
+                candidatesRemoved += bitCount(cells.lanewise(VectorOperators.XOR, markups))
+                        .reduceLanes(VectorOperators.ADD);
+                updated.intoArray(board, index);
+                changed = true;
+            }
+        }
+        for (; index < length; index++) {
+            int cell = board[index];
+            if (cell >= SOLVED) {
+                continue;
+            }
+            int markup = cell & ~(used[rowUnit[index]] | used[columnUnit[index]]
+                    | used[boxUnit[index]]);
+            if (markup != cell || CandidateSet.size(markup) == 1) {
+                update(board, index, cell, markup);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Counts the bits of each lane below the value of a packed cell
+     * @param x: the lanes
+     * @return IntVector: the number of bits of each lane
+     */
+    private static IntVector bitCount(IntVector x) {
+        x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x55555555));
+        x = x.and(0x33333333).add(x.lanewise(VectorOperators.LSHR, 2).and(0x33333333));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F);
+        return x.mul(0x01010101).lanewise(VectorOperators.LSHR, 24);
+    }
+}